@@ -1,13 +1,10 @@
 package puzzle;
 
+import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
-import java.util.function.Function;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.stream.Stream;
 
 /**
@@ -23,28 +20,17 @@ final class AStarPuzzleSolver implements HeuristicPuzzleSolver {
         Node parent;
         double g = Integer.MAX_VALUE;
 
-        Node(PuzzleMap puzzle, HeuristicAlgorithm algorithm) {
+        Node(PuzzleMap puzzle, Heuristic heuristic) {
             this.puzzle = puzzle;
-            h = puzzle.estimatedDistanceToGoal(algorithm);
+            h = heuristic.estimate(puzzle);
         }
 
         double f() {
             return h + g;
         }
 
-        Stream<PuzzleMap> neighbours() {
-            return puzzle.movablePieces().stream()
-                    .flatMap(piece -> Arrays.stream(MoveStrategy.values())
-                            .map(strategy -> move(piece, strategy))
-                            .filter(Objects::nonNull));
-        }
-
-        private PuzzleMap move(Piece piece, MoveStrategy strategy) {
-            try {
-                return puzzle.move(piece, strategy);
-            } catch (BadMoveException ignored) {
-                return null;
-            }
+        Stream<PuzzleMap> neighbours(MoveSemantics semantics) {
+            return puzzle.successors(semantics).stream();
         }
 
         Deque<PuzzleMap> buildPath() {
@@ -130,22 +116,95 @@ final class AStarPuzzleSolver implements HeuristicPuzzleSolver {
         }
     }
 
-    private Stream<QueueCommand> processNeighbour(Node current, Node neighbour, HeuristicAlgorithm algorithm) {
-        double cost = current.g + algorithm.epsilon;
+    private static final long OPEN_ENTRY_BYTES = 40;
+
+    private static final class OpenEntry implements Comparable<OpenEntry> {
+
+        final int index;
+        final long key;
+        final int g;
+        final double f;
+
+        OpenEntry(int index, long key, int g, double f) {
+            this.index = index;
+            this.key = key;
+            this.g = g;
+            this.f = f;
+        }
+
+        @Override
+        public int compareTo(OpenEntry o) {
+            return Double.compare(f, o.f);
+        }
+    }
+
+    /**
+     * a total order on open entries that depends only on the states, never on thread timing. node indices depend on
+     * the order in which states reached the table, so they only break ties between states with equal keys and
+     * fingerprints.
+     */
+    private static Comparator<OpenEntry> deterministicOrder(ConcurrentNodeTable table) {
+        return (a, b) -> {
+            int c = Double.compare(a.f, b.f);
+            if (c == 0) {
+                c = Long.compare(a.key, b.key);
+            }
+            if (c == 0 && a.index != b.index) {
+                c = Long.compare(table.state(a.index).fingerprint(), table.state(b.index).fingerprint());
+                if (c == 0) {
+                    c = Integer.compare(a.index, b.index);
+                }
+            }
+            return c;
+        };
+    }
+
+    /**
+     * the pruned successors of a state, their node indices and their heuristics, computed ahead of the commit that
+     * consumes them.
+     */
+    private static final class Expansion {
+
+        final PuzzleMap[] successors;
+        final int[] indexes;
+        final double[] h;
+
+        Expansion(PuzzleMap[] successors, int[] indexes, double[] h) {
+            this.successors = successors;
+            this.indexes = indexes;
+            this.h = h;
+        }
+    }
+
+    private static final int SPECULATION_LIMIT = 1024;
+
+    private final SolverOptions options;
+
+    AStarPuzzleSolver(SolverOptions options) {
+        this.options = options;
+    }
+
+    private Stream<QueueCommand> processNeighbour(Node current, Node neighbour, Heuristic heuristic) {
+        double cost = current.g + heuristic.moveCost();
         if (cost >= neighbour.g) {
             return Stream.empty();
         }
+        if (options.tracer != null && neighbour.g != Integer.MAX_VALUE) {
+            options.tracer.record(SearchTracer.REOPEN, neighbour.puzzle.key, moves(cost, heuristic), neighbour.h,
+                    cost + neighbour.h, 0);
+        }
         neighbour.g = cost;
         neighbour.parent = current;
         return Stream.of(new RemoveNode(neighbour), new AddNode(neighbour));
     }
 
     private Stream<QueueCommand> processNeighbours(Map<PuzzleMap, Node> cache, Node node,
-                                                   HeuristicAlgorithm algorithm) {
-        return node.neighbours()
+                                                   Heuristic heuristic) {
+        return node.neighbours(options.moveSemantics)
+                .filter(puzzle -> options.pruning.keep(node.puzzle, puzzle))
                 .flatMap(puzzle -> {
-                    Node neighbour = cache.computeIfAbsent(puzzle, k -> new Node(puzzle, algorithm));
-                    return processNeighbour(node, neighbour, algorithm);
+                    Node neighbour = cache.computeIfAbsent(puzzle, k -> new Node(puzzle, heuristic));
+                    return processNeighbour(node, neighbour, heuristic);
                 });
     }
 
@@ -154,62 +213,97 @@ final class AStarPuzzleSolver implements HeuristicPuzzleSolver {
     }
 
     @Override
-    public Deque<PuzzleMap> solve(PuzzleMap start, HeuristicAlgorithm algorithm) {
+    public Deque<PuzzleMap> solve(PuzzleMap start, Heuristic heuristic)
+            throws InterruptedException, ExecutionException, IOException, SearchBudgetExceededException {
+        if (options.memoryBudget != SolverOptions.UNBOUNDED) {
+            return new BudgetedAStarSearch(start, heuristic, options).solve();
+        }
+        if (options.deterministic) {
+            return solveDeterministic(start, heuristic, 1);
+        }
+
+        SearchTracer tracer = options.tracer;
         Map<PuzzleMap, Node> cache = new HashMap<>();
         PriorityQueue<Node> open = new PriorityQueue<>();
 
-        Node startNode = new Node(start, algorithm);
+        Node startNode = new Node(start, heuristic);
         startNode.g = 0;
 
         cache.put(start, startNode);
         open.add(startNode);
 
         while (open.size() > 0) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
             Node node = open.poll();
             if (node.puzzle.isSolved) {
                 return node.buildPath();
             }
-            Stream<QueueCommand> commands = processNeighbours(cache, node, algorithm);
+            long traceStart = tracer == null ? 0 : System.nanoTime();
+            Stream<QueueCommand> commands = processNeighbours(cache, node, heuristic);
             executeQueueCommands(open, commands);
+            if (tracer != null) {
+                tracer.record(SearchTracer.EXPAND, node.puzzle.key, moves(node.g, heuristic), node.h, node.f(),
+                        traceStart);
+            }
         }
 
         return null;
     }
 
     @Override
-    public Deque<PuzzleMap> solveParallel(PuzzleMap start, HeuristicAlgorithm algorithm, int parallelism)
-            throws InterruptedException, ExecutionException {
+    public Deque<PuzzleMap> solveParallel(PuzzleMap start, Heuristic heuristic, int parallelism)
+            throws InterruptedException, ExecutionException, SearchBudgetExceededException {
+        if (options.deterministic) {
+            return solveDeterministic(start, heuristic, parallelism);
+        }
 
-        ConcurrentMap<PuzzleMap, Node> cache = new ConcurrentHashMap<>();
-        PriorityQueue<Node> open = new PriorityQueue<>();
+        long startTime = System.nanoTime();
+        long stateBytes = start.estimatedBytes() + OPEN_ENTRY_BYTES;
+        long expanded = 0;
+        double bestHeuristic = Double.MAX_VALUE;
+        int maxDepth = 0;
 
-        Node startNode = new Node(start, algorithm);
-        startNode.g = 0;
+        ConcurrentNodeTable table = new ConcurrentNodeTable(1 << 16);
+        Queue<OpenEntry> open = new PriorityBlockingQueue<>();
 
-        cache.put(start, startNode);
-        open.add(startNode);
+        int startIndex = table.add(start);
+        table.relax(startIndex, 0, ConcurrentNodeTable.NO_PARENT);
+        open.add(new OpenEntry(startIndex, start.key, 0, heuristic.estimate(start)));
 
         ForkJoinPool fjp = new ForkJoinPool(parallelism);
 
         try {
             while (open.size() > 0) {
-                List<Node> selection = new ArrayList<>(parallelism);
-                for (int i = 0; i < parallelism && open.size() > 0; i++) {
-                    Node node = open.poll();
-                    if (node.puzzle.isSolved) {
-                        return node.buildPath();
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                List<OpenEntry> selection = new ArrayList<>(parallelism);
+                while (selection.size() < parallelism && open.size() > 0) {
+                    OpenEntry entry = open.poll();
+                    if (entry.g > table.g(entry.index)) {
+                        trace(SearchTracer.STALE, entry, heuristic, 0);
+                        continue; // superseded by a cheaper path
+                    }
+                    if (table.state(entry.index).isSolved) {
+                        return table.path(entry.index);
                     }
-                    selection.add(node);
+                    selection.add(entry);
+                    expanded++;
+                    bestHeuristic = Math.min(bestHeuristic, entry.f - entry.g * heuristic.moveCost());
+                    maxDepth = Math.max(maxDepth, entry.g);
                 }
 
-                List<QueueCommand> commands = fjp.submit(() ->
-                        IntStream.range(0, selection.size())
-                                .parallel()
-                                .mapToObj(i -> processNeighbours(cache, selection.get(i), algorithm))
-                                .flatMap(Function.identity())
-                                .collect(Collectors.toList())).get();
+                long bytes = table.estimatedBytes(stateBytes);
+                if (bytes > options.memoryBudget) {
+                    throw new SearchBudgetExceededException(options.memoryBudget, new SearchStatistics(
+                            "parallel A*", expanded, table.size(), bytes, 0, 0, 0, bestHeuristic, maxDepth,
+                            System.nanoTime() - startTime));
+                }
 
-                executeQueueCommands(open, commands.stream());
+                fjp.submit(() -> selection.parallelStream()
+                        .forEach(entry -> relaxNeighbours(table, open, entry, heuristic))).get();
             }
 
             return null;
@@ -218,4 +312,196 @@ final class AStarPuzzleSolver implements HeuristicPuzzleSolver {
         }
     }
 
+    private void relaxNeighbours(ConcurrentNodeTable table, Queue<OpenEntry> open, OpenEntry entry,
+                                 Heuristic heuristic) {
+        long traceStart = options.tracer == null ? 0 : System.nanoTime();
+        PuzzleMap puzzle = table.state(entry.index);
+        int g = entry.g + 1;
+        for (PuzzleMap neighbour : puzzle.successors(options.moveSemantics)) {
+            if (!options.pruning.keep(puzzle, neighbour)) {
+                continue;
+            }
+            int index = ConcurrentNodeTable.index(table.add(neighbour));
+            int previous = table.relax(index, g, entry.index);
+            if (previous != ConcurrentNodeTable.NOT_IMPROVED) {
+                OpenEntry next = new OpenEntry(index, neighbour.key, g,
+                        g * heuristic.moveCost() + heuristic.estimate(neighbour));
+                open.add(next);
+                // a node another thread has added but not relaxed yet had no cost to improve on
+                if (previous != ConcurrentNodeTable.UNREACHED) {
+                    trace(SearchTracer.REOPEN, next, heuristic, 0);
+                }
+            }
+        }
+        trace(SearchTracer.EXPAND, entry, heuristic, traceStart);
+    }
+
+    private void trace(byte kind, OpenEntry entry, Heuristic heuristic, long start) {
+        if (options.tracer != null) {
+            options.tracer.record(kind, entry.key, entry.g, entry.f - entry.g * heuristic.moveCost(), entry.f, start);
+        }
+    }
+
+    /**
+     * @return the number of moves behind a path cost of the sequential search.
+     */
+    private static int moves(double cost, Heuristic heuristic) {
+        return (int) Math.round(cost / heuristic.moveCost());
+    }
+
+    /**
+     * A* whose result does not depend on the parallelism. the open list is totally ordered by
+     * {@link #deterministicOrder} and only this thread touches it. every round the best {@code parallelism} entries
+     * are expanded speculatively in parallel, adding their successors to the node table unrelaxed, then committed one
+     * at a time, in order, for as long as each entry is still the one a single-threaded search would poll next. the
+     * first entry that is overtaken by a successor of an earlier commit ends the round; it and the rest go back to the
+     * open list and keep their expansions for later. since the table also holds the successors of speculation that is
+     * never committed, the point at which the memory budget is exceeded may vary slightly with the parallelism.
+     */
+    private Deque<PuzzleMap> solveDeterministic(PuzzleMap start, Heuristic heuristic, int parallelism)
+            throws InterruptedException, ExecutionException, SearchBudgetExceededException {
+
+        long startTime = System.nanoTime();
+        long stateBytes = start.estimatedBytes() + OPEN_ENTRY_BYTES;
+        long expanded = 0;
+        double bestHeuristic = Double.MAX_VALUE;
+        int maxDepth = 0;
+
+        ConcurrentNodeTable table = new ConcurrentNodeTable(1 << 16);
+        Comparator<OpenEntry> order = deterministicOrder(table);
+        PriorityQueue<OpenEntry> open = new PriorityQueue<>(order);
+        Map<Integer, Expansion> speculated = new HashMap<>();
+
+        int startIndex = table.add(start);
+        table.relax(startIndex, 0, ConcurrentNodeTable.NO_PARENT);
+        open.add(new OpenEntry(startIndex, start.key, 0, heuristic.estimate(start)));
+
+        ForkJoinPool fjp = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+
+        try {
+            while (true) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                List<OpenEntry> selection = new ArrayList<>(parallelism);
+                List<OpenEntry> missing = new ArrayList<>(parallelism);
+                OpenEntry entry;
+                while (selection.size() < parallelism && (entry = pollLive(open, table, heuristic)) != null) {
+                    selection.add(entry);
+                    if (table.state(entry.index).isSolved) {
+                        break; // nothing past a goal can be committed in this round
+                    }
+                    if (!speculated.containsKey(entry.index)) {
+                        missing.add(entry);
+                    }
+                }
+                if (selection.isEmpty()) {
+                    return null;
+                }
+
+                if (fjp == null || missing.size() < 2) {
+                    for (OpenEntry e : missing) {
+                        speculated.put(e.index, expand(table, e, heuristic));
+                    }
+                } else {
+                    Expansion[] expansions = fjp.submit(() -> missing.parallelStream()
+                            .map(e -> expand(table, e, heuristic))
+                            .toArray(Expansion[]::new)).get();
+                    for (int i = 0; i < expansions.length; i++) {
+                        speculated.put(missing.get(i).index, expansions[i]);
+                    }
+                }
+
+                for (int i = 0; i < selection.size(); i++) {
+                    entry = selection.get(i);
+                    if (i > 0) {
+                        OpenEntry head = peekLive(open, table, heuristic);
+                        if (head != null && order.compare(head, entry) < 0) {
+                            open.addAll(selection.subList(i, selection.size()));
+                            break;
+                        }
+                        if (entry.g > table.g(entry.index)) {
+                            trace(SearchTracer.STALE, entry, heuristic, 0);
+                            continue; // superseded by a cheaper path committed earlier in this round
+                        }
+                    }
+                    if (table.state(entry.index).isSolved) {
+                        return table.path(entry.index);
+                    }
+                    expanded++;
+                    bestHeuristic = Math.min(bestHeuristic, entry.f - entry.g * heuristic.moveCost());
+                    maxDepth = Math.max(maxDepth, entry.g);
+
+                    long bytes = table.estimatedBytes(stateBytes);
+                    if (bytes > options.memoryBudget) {
+                        throw new SearchBudgetExceededException(options.memoryBudget, new SearchStatistics(
+                                "deterministic A*", expanded, table.size(), bytes, 0, 0, 0, bestHeuristic,
+                                maxDepth, System.nanoTime() - startTime));
+                    }
+
+                    Expansion expansion = speculated.remove(entry.index);
+                    int g = entry.g + 1;
+                    for (int s = 0; s < expansion.successors.length; s++) {
+                        PuzzleMap neighbour = expansion.successors[s];
+                        int index = expansion.indexes[s];
+                        int previous = table.relax(index, g, entry.index);
+                        if (previous != ConcurrentNodeTable.NOT_IMPROVED) {
+                            OpenEntry next = new OpenEntry(index, neighbour.key, g,
+                                    g * heuristic.moveCost() + expansion.h[s]);
+                            open.add(next);
+                            if (previous != ConcurrentNodeTable.UNREACHED) {
+                                trace(SearchTracer.REOPEN, next, heuristic, 0);
+                            }
+                        }
+                    }
+                }
+
+                if (speculated.size() > SPECULATION_LIMIT) {
+                    speculated.clear();
+                }
+            }
+        } finally {
+            if (fjp != null) {
+                fjp.shutdown();
+            }
+        }
+    }
+
+    /**
+     * traced as the expansion of {@code entry}, so speculation that is thrown away shows up as re-expansions.
+     */
+    private Expansion expand(ConcurrentNodeTable table, OpenEntry entry, Heuristic heuristic) {
+        long traceStart = options.tracer == null ? 0 : System.nanoTime();
+        PuzzleMap puzzle = table.state(entry.index);
+        List<PuzzleMap> successors = puzzle.successors(options.moveSemantics);
+        successors.removeIf(successor -> !options.pruning.keep(puzzle, successor));
+        PuzzleMap[] result = successors.toArray(new PuzzleMap[0]);
+        int[] indexes = new int[result.length];
+        double[] h = new double[result.length];
+        for (int i = 0; i < result.length; i++) {
+            indexes[i] = ConcurrentNodeTable.index(table.add(result[i]));
+            h[i] = heuristic.estimate(result[i]);
+        }
+        trace(SearchTracer.EXPAND, entry, heuristic, traceStart);
+        return new Expansion(result, indexes, h);
+    }
+
+    private OpenEntry pollLive(Queue<OpenEntry> open, ConcurrentNodeTable table, Heuristic heuristic) {
+        while (true) {
+            OpenEntry entry = open.poll();
+            if (entry == null || entry.g <= table.g(entry.index)) {
+                return entry;
+            }
+            trace(SearchTracer.STALE, entry, heuristic, 0);
+        }
+    }
+
+    private OpenEntry peekLive(Queue<OpenEntry> open, ConcurrentNodeTable table, Heuristic heuristic) {
+        OpenEntry entry;
+        while ((entry = open.peek()) != null && entry.g > table.g(entry.index)) {
+            trace(SearchTracer.STALE, open.poll(), heuristic, 0);
+        }
+        return entry;
+    }
+
 }
@@ -0,0 +1,204 @@
+package puzzle;
+
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * A level-synchronous breadth-first solver. Since every move costs the same, the first layer that contains a solved
+ * state yields an optimal solution, so the heuristic is not consulted at all.
+ * <p>
+ * Each layer is split into chunks that are expanded in parallel into chunk-local buffers. Duplicates, both within
+ * the layer and against earlier layers, are removed by the lock-free {@link ConcurrentNodeTable}: only the thread
+ * that first inserts a state keeps it. Parent pointers are compact node indices in the same table.
+ * <p>
+ * In deterministic mode the chunks only generate successors; they are then inserted by one thread in layer order, so
+ * every state keeps the parent a single-threaded search would have given it.
+ *
+ * @author ahmad
+ */
+final class BreadthFirstPuzzleSolver implements HeuristicPuzzleSolver {
+
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int MIN_CHUNK = 64;
+
+    private final SolverOptions options;
+
+    BreadthFirstPuzzleSolver(SolverOptions options) {
+        this.options = options;
+    }
+
+    @Override
+    public Deque<PuzzleMap> solve(PuzzleMap start, Heuristic heuristic)
+            throws InterruptedException, ExecutionException, SearchBudgetExceededException {
+        return solveParallel(start, heuristic, 1);
+    }
+
+    @Override
+    public Deque<PuzzleMap> solveParallel(PuzzleMap start, Heuristic heuristic, int parallelism)
+            throws InterruptedException, ExecutionException, SearchBudgetExceededException {
+
+        long startTime = System.nanoTime();
+        long stateBytes = start.estimatedBytes() + Integer.BYTES;
+        long expanded = 0;
+
+        ConcurrentNodeTable table = new ConcurrentNodeTable(1 << 16);
+        int startIndex = table.add(start);
+        table.relax(startIndex, 0, ConcurrentNodeTable.NO_PARENT);
+        if (start.isSolved) {
+            return table.path(startIndex);
+        }
+
+        AtomicInteger solved = new AtomicInteger(ConcurrentNodeTable.NO_PARENT);
+        // a single-threaded solve runs on the calling thread rather than on a pool of its own
+        ForkJoinPool fjp = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+
+        try {
+            int[] frontier = {startIndex};
+            for (int depth = 1; frontier.length > 0; depth++) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                int[] layer = frontier;
+                int g = depth;
+                int chunk = Math.max(MIN_CHUNK, layer.length / (parallelism * CHUNKS_PER_THREAD) + 1);
+                int chunks = (layer.length + chunk - 1) / chunk;
+
+                IntStream chunkIndices = fjp == null ? IntStream.range(0, chunks)
+                        : IntStream.range(0, chunks).parallel();
+                int[][] buffers;
+                if (options.deterministic) {
+                    PuzzleMap[][][] successors = invoke(fjp, () -> chunkIndices
+                            .mapToObj(c -> successors(table, layer, c * chunk,
+                                    Math.min(layer.length, (c + 1) * chunk), g))
+                            .toArray(PuzzleMap[][][]::new));
+                    buffers = new int[][]{commit(table, layer, chunk, successors, g, solved)};
+                } else {
+                    buffers = invoke(fjp, () -> chunkIndices
+                            .mapToObj(c -> expand(table, layer, c * chunk, Math.min(layer.length, (c + 1) * chunk),
+                                    g, solved))
+                            .toArray(int[][]::new));
+                }
+
+                if (solved.get() != ConcurrentNodeTable.NO_PARENT) {
+                    return table.path(solved.get());
+                }
+                expanded += layer.length;
+                long bytes = table.estimatedBytes(stateBytes);
+                if (bytes > options.memoryBudget) {
+                    throw new SearchBudgetExceededException(options.memoryBudget, new SearchStatistics(
+                            "parallel BFS", expanded, table.size(), bytes, 0, 0, 0, Double.NaN, depth,
+                            System.nanoTime() - startTime));
+                }
+                frontier = concat(buffers);
+            }
+            return null;
+        } finally {
+            if (fjp != null) {
+                fjp.shutdown();
+            }
+        }
+    }
+
+    private static <T> T invoke(ForkJoinPool fjp, Supplier<T> task) throws InterruptedException, ExecutionException {
+        return fjp == null ? task.get() : fjp.submit(task::get).get();
+    }
+
+    private int[] expand(ConcurrentNodeTable table, int[] layer, int from, int to, int g, AtomicInteger solved) {
+        int[] buffer = new int[Math.max(16, (to - from) * 2)];
+        int size = 0;
+        for (int i = from; i < to && solved.get() == ConcurrentNodeTable.NO_PARENT; i++) {
+            long traceStart = options.tracer == null ? 0 : System.nanoTime();
+            int parent = layer[i];
+            PuzzleMap puzzle = table.state(parent);
+            for (PuzzleMap neighbour : puzzle.successors(options.moveSemantics)) {
+                if (!options.pruning.keep(puzzle, neighbour)) {
+                    continue;
+                }
+                int index = table.add(neighbour);
+                if (index < 0) {
+                    continue; // seen in this or an earlier layer
+                }
+                table.relax(index, g, parent);
+                if (neighbour.isSolved) {
+                    solved.compareAndSet(ConcurrentNodeTable.NO_PARENT, index);
+                }
+                if (size == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, size * 2);
+                }
+                buffer[size++] = index;
+            }
+            trace(puzzle, g - 1, traceStart);
+        }
+        return Arrays.copyOf(buffer, size);
+    }
+
+    private PuzzleMap[][] successors(ConcurrentNodeTable table, int[] layer, int from, int to, int g) {
+        PuzzleMap[][] result = new PuzzleMap[to - from][];
+        for (int i = from; i < to; i++) {
+            long traceStart = options.tracer == null ? 0 : System.nanoTime();
+            PuzzleMap puzzle = table.state(layer[i]);
+            List<PuzzleMap> successors = puzzle.successors(options.moveSemantics);
+            successors.removeIf(successor -> !options.pruning.keep(puzzle, successor));
+            result[i - from] = successors.toArray(new PuzzleMap[0]);
+            trace(puzzle, g - 1, traceStart);
+        }
+        return result;
+    }
+
+    /**
+     * the heuristic is never consulted, so the priority of an expansion is its depth.
+     */
+    private void trace(PuzzleMap puzzle, int depth, long start) {
+        if (options.tracer != null) {
+            options.tracer.record(SearchTracer.EXPAND, puzzle.key, depth, Double.NaN, depth, start);
+        }
+    }
+
+    /**
+     * inserts the successors of a layer in the order a single thread would have generated them.
+     */
+    private static int[] commit(ConcurrentNodeTable table, int[] layer, int chunk, PuzzleMap[][][] successors,
+                                int g, AtomicInteger solved) {
+        int[] buffer = new int[Math.max(16, layer.length * 2)];
+        int size = 0;
+        for (int i = 0; i < layer.length; i++) {
+            int parent = layer[i];
+            for (PuzzleMap neighbour : successors[i / chunk][i % chunk]) {
+                int index = table.add(neighbour);
+                if (index < 0) {
+                    continue;
+                }
+                table.relax(index, g, parent);
+                if (neighbour.isSolved) {
+                    solved.set(index);
+                    return buffer;
+                }
+                if (size == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, size * 2);
+                }
+                buffer[size++] = index;
+            }
+        }
+        return Arrays.copyOf(buffer, size);
+    }
+
+    private static int[] concat(int[][] buffers) {
+        int length = 0;
+        for (int[] buffer : buffers) {
+            length += buffer.length;
+        }
+        int[] result = new int[length];
+        int offset = 0;
+        for (int[] buffer : buffers) {
+            System.arraycopy(buffer, 0, result, offset, buffer.length);
+            offset += buffer.length;
+        }
+        return result;
+    }
+}
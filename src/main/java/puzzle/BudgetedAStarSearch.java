@@ -0,0 +1,494 @@
+package puzzle;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * A* under a memory budget. While the estimated heap held by the search stays under the budget it behaves like
+ * {@link AStarPuzzleSolver#solve}. Past the budget it degrades in order:
+ * <ol>
+ * <li>the colder half of the open list is written to a sorted run on disk and merged back in f order,</li>
+ * <li>once spilling cannot free enough (or the disk budget is used up) the closed set is dropped and the search
+ * restarts as IDA* with a fixed-size transposition table, whose memory only grows with the depth of the current
+ * path,</li>
+ * <li>if even that path no longer fits, the solve fails with a {@link SearchBudgetExceededException}.</li>
+ * </ol>
+ *
+ * @author ahmad
+ */
+final class BudgetedAStarSearch {
+
+    /**
+     * node, open-list entry, hash map entry and their share of the backing arrays.
+     */
+    private static final long NODE_OVERHEAD = 48 + 32 + 32 + 16;
+
+    private static final class Node {
+
+        final PuzzleMap puzzle;
+        final double h;
+        final long bytes;
+
+        Node parent;
+        double g = Integer.MAX_VALUE;
+        /**
+         * the index in the closed list, assigned on the first expansion and kept when the node is reopened, so that
+         * spilled entries naming it as their parent still resolve to it.
+         */
+        int closedId = -1;
+        boolean isClosed;
+
+        Node(PuzzleMap puzzle, Heuristic heuristic) {
+            this.puzzle = puzzle;
+            h = heuristic.estimate(puzzle);
+            bytes = puzzle.estimatedBytes() + NODE_OVERHEAD;
+        }
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+
+        final Node node;
+        final Node parent;
+        final double g;
+        final double f;
+
+        Entry(Node node, Node parent, double g) {
+            this.node = node;
+            this.parent = parent;
+            this.g = g;
+            f = g + node.h;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            return Double.compare(f, o.f);
+        }
+    }
+
+    private static final class SpillRun implements Closeable {
+
+        final Path file;
+        final DataInputStream in;
+        long remaining;
+
+        double f;
+        double g;
+        int parentId;
+        byte[] state;
+
+        SpillRun(Path file, long records) throws IOException {
+            this.file = file;
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+            remaining = records;
+            advance();
+        }
+
+        boolean hasHead() {
+            return state != null;
+        }
+
+        void advance() throws IOException {
+            if (remaining-- > 0) {
+                f = in.readDouble();
+                g = in.readDouble();
+                parentId = in.readInt();
+                state = new byte[in.readUnsignedShort()];
+                in.readFully(state);
+            } else {
+                state = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                in.close();
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static final class BudgetExceeded extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        BudgetExceeded() {
+            super(null, null, false, false);
+        }
+    }
+
+    private final PuzzleMap start;
+    private final Heuristic heuristic;
+    private final SolverOptions options;
+    private final Map<Character, Piece.Type> types;
+    private final long startTime = System.nanoTime();
+
+    private Map<PuzzleMap, Node> cache = new HashMap<>();
+    private PriorityQueue<Entry> open = new PriorityQueue<>();
+    private List<Node> closed = new ArrayList<>();
+    private final List<SpillRun> runs = new ArrayList<>();
+
+    private String phase = "A*";
+    private long bytes;
+    private long expanded;
+    private long spilledNodes;
+    private long spilledBytes;
+    private int spillRuns;
+    private double bestHeuristic = Double.MAX_VALUE;
+    private int maxDepth;
+
+    BudgetedAStarSearch(PuzzleMap start, Heuristic heuristic, SolverOptions options) {
+        this.start = start;
+        this.heuristic = heuristic;
+        this.options = options;
+        types = start.pieceTypes();
+    }
+
+    Deque<PuzzleMap> solve() throws InterruptedException, IOException, SearchBudgetExceededException {
+        try {
+            return aStar();
+        } catch (BudgetExceeded e) {
+            releaseAStarState();
+            phase = "IDA*";
+            return idaStar();
+        } finally {
+            releaseAStarState();
+        }
+    }
+
+    private Deque<PuzzleMap> aStar() throws InterruptedException, IOException, BudgetExceeded {
+        Node startNode = new Node(start, heuristic);
+        startNode.g = 0;
+        store(startNode);
+        open.add(new Entry(startNode, null, 0));
+
+        Node node;
+        while ((node = poll()) != null) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (node.puzzle.isSolved) {
+                Deque<PuzzleMap> path = new ArrayDeque<>();
+                for (Node n = node; n != null; n = n.parent) {
+                    path.addFirst(n.puzzle);
+                }
+                return path;
+            }
+            if (node.closedId < 0) {
+                node.closedId = closed.size();
+                closed.add(node);
+            }
+            node.isClosed = true;
+            expanded++;
+            bestHeuristic = Math.min(bestHeuristic, node.h);
+            maxDepth = Math.max(maxDepth, (int) Math.round(node.g / heuristic.moveCost()));
+
+            double cost = node.g + heuristic.moveCost();
+            for (PuzzleMap puzzle : node.puzzle.successors(options.moveSemantics)) {
+                if (!options.pruning.keep(node.puzzle, puzzle)) {
+                    continue;
+                }
+                Node neighbour = cache.get(puzzle);
+                if (neighbour == null) {
+                    neighbour = new Node(puzzle, heuristic);
+                    store(neighbour);
+                }
+                if (cost < neighbour.g) {
+                    // with an inconsistent heuristic a closed node can still be reached more cheaply; reopen it so
+                    // that its successors get the lower cost too, as AStarPuzzleSolver does
+                    neighbour.g = cost;
+                    neighbour.parent = node;
+                    neighbour.isClosed = false;
+                    open.add(new Entry(neighbour, node, cost));
+                }
+            }
+
+            if (bytes > options.memoryBudget) {
+                spill();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the open node with the lowest f, from memory or from one of the spilled runs.
+     */
+    private Node poll() throws IOException {
+        while (true) {
+            SpillRun run = null;
+            for (SpillRun r : runs) {
+                if (r.hasHead() && (run == null || r.f < run.f)) {
+                    run = r;
+                }
+            }
+            Entry entry = open.peek();
+            if (run != null && (entry == null || run.f < entry.f)) {
+                Node node = reload(run);
+                if (node != null) {
+                    return node;
+                }
+                continue;
+            }
+            if (entry == null) {
+                return null;
+            }
+            open.poll();
+            Node node = entry.node;
+            if (isCurrent(entry)) {
+                return node;
+            }
+        }
+    }
+
+    private Node reload(SpillRun run) throws IOException {
+        PuzzleMap puzzle = PuzzleMap.readFrom(new DataInputStream(new ByteArrayInputStream(run.state)),
+                start.border(), types);
+        double g = run.g;
+        Node parent = run.parentId < 0 ? null : closed.get(run.parentId);
+        run.advance();
+
+        Node node = cache.get(puzzle);
+        if (node == null) {
+            node = new Node(puzzle, heuristic);
+            store(node);
+        } else if (node.g <= g) {
+            return null;
+        }
+        node.g = g;
+        node.parent = parent;
+        node.isClosed = false;
+        return node;
+    }
+
+    /**
+     * @return {@code true} unless the entry was superseded by a cheaper one, or its node was expanded or spilled.
+     */
+    private boolean isCurrent(Entry entry) {
+        Node node = entry.node;
+        return !node.isClosed && entry.g <= node.g && cache.get(node.puzzle) == node;
+    }
+
+    /**
+     * writes the colder half of the open list to a sorted run and forgets those nodes.
+     */
+    private void spill() throws IOException, BudgetExceeded {
+        List<Entry> entries = new ArrayList<>(open.size());
+        for (Entry entry : open) {
+            if (isCurrent(entry)) {
+                entries.add(entry);
+            }
+        }
+        Collections.sort(entries);
+        int keep = entries.size() / 2;
+        if (entries.size() - keep == 0) {
+            throw new BudgetExceeded();
+        }
+
+        Path file = Files.createTempFile(options.spillDirectory, "puzzle-spill-", ".run");
+        long written;
+        try {
+            written = writeRun(file, entries, keep);
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        if (spilledBytes + written > options.spillBudget) {
+            Files.deleteIfExists(file);
+            throw new BudgetExceeded();
+        }
+
+        open = new PriorityQueue<>(entries.subList(0, keep));
+        for (int i = keep; i < entries.size(); i++) {
+            forget(entries.get(i).node);
+        }
+        runs.add(new SpillRun(file, entries.size() - keep));
+        spilledNodes += entries.size() - keep;
+        spilledBytes += written;
+        spillRuns++;
+        phase = "A* + spill";
+
+        if (bytes > options.memoryBudget) {
+            throw new BudgetExceeded();
+        }
+    }
+
+    /**
+     * @return the number of bytes written, or more than the remaining disk budget if the run did not fit.
+     */
+    private long writeRun(Path file, List<Entry> entries, int from) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream state = new DataOutputStream(buffer);
+            for (int i = from; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                buffer.reset();
+                entry.node.puzzle.writeTo(state);
+                out.writeDouble(entry.f);
+                out.writeDouble(entry.g);
+                out.writeInt(entry.parent == null ? -1 : entry.parent.closedId);
+                out.writeShort(buffer.size());
+                buffer.writeTo(out);
+                if (out.size() + spilledBytes > options.spillBudget) {
+                    break;
+                }
+            }
+            return out.size();
+        }
+    }
+
+    private Deque<PuzzleMap> idaStar() throws InterruptedException, SearchBudgetExceededException {
+        // half of the budget goes to a direct-mapped table of (fingerprint, g, iteration) that stops IDA* from
+        // re-exploring a state reached again within the same iteration at no lower cost. the fingerprint rather than
+        // the key identifies the state: PIECE_SET keys collide too often for a match to stand for a visit
+        int capacity = Integer.highestOneBit((int) Math.max(2, Math.min(1 << 30, options.memoryBudget / 2 / 20)));
+        long[] fingerprints = new long[capacity];
+        int[] costs = new int[capacity];
+        int[] iterations = new int[capacity];
+        long tableBytes = 20L * capacity;
+
+        Deque<PuzzleMap> path = new ArrayDeque<>();
+        Set<PuzzleMap> onPath = new HashSet<>();
+        path.addLast(start);
+        onPath.add(start);
+        double threshold = heuristic.estimate(start);
+        for (int iteration = 1; ; iteration++) {
+            TranspositionTable table = new TranspositionTable(fingerprints, costs, iterations, iteration, tableBytes);
+            double next = idaStar(path, onPath, 0, threshold, table);
+            if (next < 0) {
+                return path;
+            }
+            if (next == Double.MAX_VALUE) {
+                return null;
+            }
+            threshold = next;
+        }
+    }
+
+    private static final class TranspositionTable {
+
+        final long[] fingerprints;
+        final int[] costs;
+        final int[] iterations;
+        final int iteration;
+        final long bytes;
+
+        TranspositionTable(long[] fingerprints, int[] costs, int[] iterations, int iteration, long bytes) {
+            this.fingerprints = fingerprints;
+            this.costs = costs;
+            this.iterations = iterations;
+            this.iteration = iteration;
+            this.bytes = bytes;
+        }
+
+        /**
+         * @return {@code true} if the state was already visited in this iteration at no higher cost.
+         */
+        boolean visited(PuzzleMap puzzle, int g) {
+            long fingerprint = puzzle.fingerprint();
+            int slot = (int) (fingerprint ^ (fingerprint >>> 32)) & (fingerprints.length - 1);
+            if (iterations[slot] == iteration && fingerprints[slot] == fingerprint && costs[slot] <= g) {
+                return true;
+            }
+            fingerprints[slot] = fingerprint;
+            costs[slot] = g;
+            iterations[slot] = iteration;
+            return false;
+        }
+    }
+
+    /**
+     * @return {@code -1} if a solution was found, otherwise the lowest f that exceeded {@code threshold}.
+     */
+    private double idaStar(Deque<PuzzleMap> path, Set<PuzzleMap> onPath, int depth, double threshold,
+                           TranspositionTable table) throws InterruptedException, SearchBudgetExceededException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        PuzzleMap puzzle = path.getLast();
+        double h = heuristic.estimate(puzzle);
+        double f = depth * heuristic.moveCost() + h;
+        if (f > threshold) {
+            return f;
+        }
+        if (puzzle.isSolved) {
+            return -1;
+        }
+        if (table.visited(puzzle, depth)) {
+            return Double.MAX_VALUE;
+        }
+        expanded++;
+        bestHeuristic = Math.min(bestHeuristic, h);
+        maxDepth = Math.max(maxDepth, depth);
+        bytes = table.bytes + (long) path.size() * (puzzle.estimatedBytes() + NODE_OVERHEAD);
+        if (bytes > options.memoryBudget) {
+            throw new SearchBudgetExceededException(options.memoryBudget, statistics(onPath.size()));
+        }
+
+        List<PuzzleMap> successors = puzzle.successors(options.moveSemantics);
+        successors.sort(Comparator.comparingDouble(p -> heuristic.estimate(p)));
+        double min = Double.MAX_VALUE;
+        for (PuzzleMap successor : successors) {
+            if (onPath.contains(successor) || !options.pruning.keep(puzzle, successor)) {
+                continue;
+            }
+            path.addLast(successor);
+            onPath.add(successor);
+            double result = idaStar(path, onPath, depth + 1, threshold, table);
+            if (result < 0) {
+                return result;
+            }
+            path.removeLast();
+            onPath.remove(successor);
+            min = Math.min(min, result);
+        }
+        return min;
+    }
+
+    private void store(Node node) {
+        cache.put(node.puzzle, node);
+        bytes += node.bytes;
+    }
+
+    private void forget(Node node) {
+        cache.remove(node.puzzle);
+        bytes -= node.bytes;
+    }
+
+    private void releaseAStarState() throws IOException {
+        IOException failure = null;
+        for (SpillRun run : runs) {
+            try {
+                run.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        runs.clear();
+        cache = new HashMap<>();
+        open = new PriorityQueue<>();
+        closed = new ArrayList<>();
+        bytes = 0;
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return what the solve has done so far; once it returned, it no longer stores any node.
+     */
+    SearchStatistics statistics() {
+        return statistics(cache.size());
+    }
+
+    private SearchStatistics statistics(long storedNodes) {
+        return new SearchStatistics(phase, expanded, storedNodes, bytes, spilledNodes, spilledBytes, spillRuns,
+                bestHeuristic, maxDepth, System.nanoTime() - startTime);
+    }
+}
@@ -0,0 +1,227 @@
+package puzzle;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock-free table of search nodes keyed by the 64-bit state key of {@link PuzzleMap}.
+ * <p>
+ * Nodes live in a tower of open-addressing levels, each twice as large as the previous one. A state is inserted into
+ * the first level that has a free slot within a bounded linear probe, so slots only ever go from empty to occupied and
+ * two threads inserting the same state always meet in the same slot. Every node is identified by a stable
+ * {@code int} index and carries a packed 64-bit link holding its cost ({@code g}, in moves) and its parent's index,
+ * which is only ever lowered through {@link #relax(int, int, int)}.
+ *
+ * @author ahmad
+ */
+final class ConcurrentNodeTable {
+
+    static final int NO_PARENT = -1;
+    static final int UNREACHED = Integer.MAX_VALUE;
+    static final int NOT_IMPROVED = -1;
+
+    private static final int PROBES = 32;
+    private static final long SLOT_BYTES = 8 + 4 + 8;
+    private static final int MIN_CAPACITY = 64;
+    private static final long UNREACHED_LINK = pack(UNREACHED, NO_PARENT);
+
+    private static final class Level {
+
+        final int base;
+        final int mask;
+        final AtomicLongArray keys;
+        final AtomicReferenceArray<PuzzleMap> states;
+        final AtomicLongArray links;
+
+        Level(int base, int capacity) {
+            this.base = base;
+            mask = capacity - 1;
+            keys = new AtomicLongArray(capacity);
+            states = new AtomicReferenceArray<>(capacity);
+            long[] unreached = new long[capacity];
+            Arrays.fill(unreached, UNREACHED_LINK);
+            links = new AtomicLongArray(unreached);
+        }
+    }
+
+    private final int initialCapacity;
+    private final int shift;
+    private final AtomicReferenceArray<Level> levels;
+    private final AtomicInteger size = new AtomicInteger();
+
+    ConcurrentNodeTable(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize && capacity < 1 << 29) {
+            capacity <<= 1;
+        }
+        initialCapacity = capacity;
+        shift = Integer.numberOfTrailingZeros(capacity);
+        levels = new AtomicReferenceArray<>(31 - shift);
+        levels.set(0, new Level(0, capacity));
+    }
+
+    /**
+     * @return the index of the newly added node, or {@code ~index} of the node already holding an equal state.
+     */
+    int add(PuzzleMap state) {
+        long key = spread(state.key);
+        for (int l = 0; l < levels.length(); l++) {
+            Level level = level(l);
+            int start = (int) mix(key) & level.mask;
+            for (int p = 0; p < PROBES && p <= level.mask; p++) {
+                int slot = (start + p) & level.mask;
+                long k = level.keys.get(slot);
+                PuzzleMap existing = null;
+                if (k == 0) {
+                    if (level.states.compareAndSet(slot, null, state)) {
+                        level.keys.set(slot, key);
+                        size.incrementAndGet();
+                        return level.base + slot;
+                    }
+                    existing = level.states.get(slot);
+                    k = spread(existing.key);
+                }
+                if (k == key) {
+                    if (existing == null) {
+                        existing = level.states.get(slot);
+                    }
+                    if (existing.equals(state)) {
+                        return ~(level.base + slot);
+                    }
+                }
+            }
+        }
+        throw new IllegalStateException("node table is full.");
+    }
+
+    /**
+     * @return the index of the node holding an equal state, or {@code -1} if there is none.
+     */
+    int indexOf(PuzzleMap state) {
+        long key = spread(state.key);
+        for (int l = 0; l < levels.length(); l++) {
+            Level level = levels.get(l);
+            if (level == null) {
+                return -1;
+            }
+            int start = (int) mix(key) & level.mask;
+            for (int p = 0; p < PROBES && p <= level.mask; p++) {
+                int slot = (start + p) & level.mask;
+                PuzzleMap existing = level.states.get(slot);
+                if (existing == null) {
+                    return -1;
+                }
+                if (spread(existing.key) == key && existing.equals(state)) {
+                    return level.base + slot;
+                }
+            }
+        }
+        return -1;
+    }
+
+    static int index(int addResult) {
+        return addResult < 0 ? ~addResult : addResult;
+    }
+
+    PuzzleMap state(int index) {
+        Level level = levelOf(index);
+        return level.states.get(index - level.base);
+    }
+
+    int g(int index) {
+        Level level = levelOf(index);
+        return g(level.links.get(index - level.base));
+    }
+
+    int parent(int index) {
+        Level level = levelOf(index);
+        return parent(level.links.get(index - level.base));
+    }
+
+    /**
+     * atomically sets the cost and parent of a node if {@code g} is lower than its current cost.
+     *
+     * @return the cost the node had before, {@link #UNREACHED} if it had none yet, or {@link #NOT_IMPROVED} if it
+     * was not improved.
+     */
+    int relax(int index, int g, int parent) {
+        Level level = levelOf(index);
+        int slot = index - level.base;
+        long link = pack(g, parent);
+        while (true) {
+            long current = level.links.get(slot);
+            int previous = g(current);
+            if (previous <= g) {
+                return NOT_IMPROVED;
+            }
+            if (level.links.compareAndSet(slot, current, link)) {
+                return previous;
+            }
+        }
+    }
+
+    Deque<PuzzleMap> path(int index) {
+        Deque<PuzzleMap> path = new ArrayDeque<>();
+        while (index != NO_PARENT) {
+            path.addFirst(state(index));
+            index = parent(index);
+        }
+        return path;
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * @return the estimated heap held by the table, given the estimated size of a single state.
+     */
+    long estimatedBytes(long stateBytes) {
+        long slots = 0;
+        for (int l = 0; l < levels.length() && levels.get(l) != null; l++) {
+            slots += levels.get(l).mask + 1;
+        }
+        return slots * SLOT_BYTES + size() * stateBytes;
+    }
+
+    private Level level(int l) {
+        Level level = levels.get(l);
+        if (level == null) {
+            int capacity = initialCapacity << l;
+            levels.compareAndSet(l, null, new Level(capacity - initialCapacity, capacity));
+            level = levels.get(l);
+        }
+        return level;
+    }
+
+    private Level levelOf(int index) {
+        int l = 31 - Integer.numberOfLeadingZeros((index >>> shift) + 1);
+        return levels.get(l);
+    }
+
+    private static long pack(int g, int parent) {
+        return (long) g << 32 | (parent & 0xFFFFFFFFL);
+    }
+
+    private static int g(long link) {
+        return (int) (link >>> 32);
+    }
+
+    private static int parent(long link) {
+        return (int) link;
+    }
+
+    private static long spread(long key) {
+        // 0 marks an empty slot
+        return key == 0 ? 1 : key;
+    }
+
+    private static long mix(long key) {
+        key = (key ^ (key >>> 33)) * 0xFF51AFD7ED558CCDL;
+        return key ^ (key >>> 33);
+    }
+}
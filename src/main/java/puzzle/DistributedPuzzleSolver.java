@@ -0,0 +1,301 @@
+package puzzle;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.text.ParseException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A breadth-first search spread over several JVMs on the same host. The coordinator (this class) starts one
+ * {@link DistributedWorker} process per unit of parallelism and the workers partition the state space between them by
+ * the 64-bit key of every state, so each one holds and expands only its own share of the visited states; duplicates
+ * are found by the single worker that owns them. Successors are exchanged directly between the workers, in batches,
+ * over localhost sockets, while the coordinator only steps the search one layer at a time and detects the end of each
+ * layer by counting the batches sent and received on every channel.
+ * <p>
+ * Like {@link BreadthFirstPuzzleSolver} it returns a shortest solution and ignores the heuristic. Which of several
+ * shortest solutions it returns depends on the order batches arrive in. Options it cannot honour are refused with an
+ * {@link IllegalArgumentException}: determinism, a memory budget (each worker runs with the heap settings of its own
+ * JVM), a tracer, and pruning rules other than the {@link StandardPruningRule}s, which are the only ones that can be
+ * named to a worker. The workers report their pruning hits with every layer, and they are added to the options'
+ * {@link Pruning}.
+ * <p>
+ * Waiting for a worker wakes up every {@value #POLL_MILLIS} ms to check for interrupts, so a cancelled solve returns
+ * promptly even while a worker is slow or stuck; its worker processes are then killed rather than shut down.
+ *
+ * @author ahmad
+ */
+final class DistributedPuzzleSolver implements HeuristicPuzzleSolver {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 30_000;
+    private static final int POLL_MILLIS = 50;
+
+    private final SolverOptions options;
+
+    private volatile List<SearchStatistics> workerStatistics = Collections.emptyList();
+
+    DistributedPuzzleSolver(SolverOptions options) {
+        if (options.deterministic) {
+            throw new IllegalArgumentException("the distributed solver has no deterministic mode.");
+        }
+        if (options.memoryBudget != SolverOptions.UNBOUNDED) {
+            throw new IllegalArgumentException("the distributed solver cannot enforce a memory budget.");
+        }
+        if (options.tracer != null) {
+            throw new IllegalArgumentException("the distributed solver cannot trace its workers.");
+        }
+        for (PruningRule rule : options.pruning.rules()) {
+            if (!(rule instanceof StandardPruningRule)) {
+                throw new IllegalArgumentException("the distributed solver cannot send pruning rule " + rule
+                        + " to its workers.");
+            }
+        }
+        this.options = options;
+    }
+
+    @Override
+    public Deque<PuzzleMap> solve(PuzzleMap start, Heuristic heuristic) throws IOException, InterruptedException {
+        return solveParallel(start, heuristic, Runtime.getRuntime().availableProcessors());
+    }
+
+    @Override
+    public Deque<PuzzleMap> solveParallel(PuzzleMap start, Heuristic heuristic, int parallelism)
+            throws IOException, InterruptedException {
+        if (start.isSolved) {
+            return new ArrayDeque<>(Collections.singleton(start));
+        }
+        String board = start.board();
+        StateHashStrategy hashStrategy = start.border().hashStrategy;
+        PuzzleMap root;
+        try {
+            root = PuzzleParser.parse(board, hashStrategy);
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("cannot send the puzzle to the workers.", e);
+        }
+
+        int workers = Math.max(1, parallelism);
+        long startTime = System.nanoTime();
+        List<Process> processes = new ArrayList<>();
+        DataInputStream[] in = new DataInputStream[workers];
+        DataOutputStream[] out = new DataOutputStream[workers];
+        Socket[] sockets = new Socket[workers];
+        boolean cancelled = false;
+        try (ServerSocket server = new ServerSocket(0, workers, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(POLL_MILLIS);
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            for (int i = 0; i < workers; i++) {
+                processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                        DistributedWorker.class.getName(), String.valueOf(server.getLocalPort()), String.valueOf(i))
+                        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start());
+            }
+
+            int[] ports = new int[workers];
+            long connectDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CONNECT_TIMEOUT_MILLIS);
+            for (int i = 0; i < workers; i++) {
+                Socket socket = accept(server, connectDeadline);
+                socket.setTcpNoDelay(true);
+                DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                int id = input.readInt();
+                sockets[id] = socket;
+                in[id] = input;
+                out[id] = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                ports[id] = input.readInt();
+            }
+            for (DataOutputStream o : out) {
+                o.writeByte(DistributedWorker.SETUP);
+                o.writeUTF(board);
+                o.writeUTF(hashStrategy.name());
+                o.writeUTF(options.moveSemantics.name());
+                List<PruningRule> rules = options.pruning.rules();
+                o.writeInt(rules.size());
+                for (PruningRule rule : rules) {
+                    o.writeUTF(((StandardPruningRule) rule).name());
+                }
+                o.writeInt(workers);
+                for (int port : ports) {
+                    o.writeInt(port);
+                }
+                o.flush();
+            }
+            for (int w = 0; w < workers; w++) {
+                expect(sockets[w], in[w], DistributedWorker.READY);
+            }
+
+            broadcast(out, DistributedWorker.ROOT, o -> root.writeTo(o));
+            long[] expanded = new long[workers];
+            long[] stored = new long[workers];
+            long[] bytes = new long[workers];
+            for (int depth = 1; ; depth++) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                broadcast(out, DistributedWorker.EXPAND, o -> {
+                });
+                int[] incoming = new int[workers];
+                for (int i = 0; i < workers; i++) {
+                    expect(sockets[i], in[i], DistributedWorker.SENT);
+                    for (int w = 0; w < workers; w++) {
+                        incoming[w] += in[i].readInt();
+                    }
+                }
+                for (int w = 0; w < workers; w++) {
+                    out[w].writeByte(DistributedWorker.EXPECT);
+                    out[w].writeInt(incoming[w]);
+                    out[w].flush();
+                }
+
+                long next = 0;
+                long found = DistributedWorker.NO_STATE;
+                for (int w = 0; w < workers; w++) {
+                    expect(sockets[w], in[w], DistributedWorker.LAYER);
+                    next += in[w].readLong();
+                    long reference = in[w].readLong();
+                    if (found == DistributedWorker.NO_STATE) {
+                        found = reference;
+                    }
+                    expanded[w] = in[w].readLong();
+                    stored[w] = in[w].readLong();
+                    bytes[w] = in[w].readLong();
+                    for (int r = 0; r < options.pruning.rules().size(); r++) {
+                        options.pruning.addHits(r, in[w].readLong());
+                    }
+                }
+                List<SearchStatistics> statistics = new ArrayList<>();
+                for (int w = 0; w < workers; w++) {
+                    statistics.add(new SearchStatistics("distributed BFS worker " + w, expanded[w], stored[w],
+                            bytes[w], 0, 0, 0, Double.NaN, depth, System.nanoTime() - startTime));
+                }
+                workerStatistics = Collections.unmodifiableList(statistics);
+
+                if (found != DistributedWorker.NO_STATE) {
+                    Deque<PuzzleMap> path = path(in, out, found, root);
+                    path.removeFirst();
+                    path.addFirst(start);
+                    return path;
+                }
+                if (next == 0) {
+                    return null;
+                }
+            }
+        } catch (InterruptedException e) {
+            cancelled = true;
+            throw e;
+        } finally {
+            if (cancelled) {
+                // a worker may be in the middle of a layer and would not read a shutdown for a while
+                for (Process process : processes) {
+                    process.destroyForcibly();
+                }
+                for (Process process : processes) {
+                    process.waitFor();
+                }
+            }
+            for (int i = 0; i < workers; i++) {
+                if (out[i] != null && !cancelled) {
+                    try {
+                        out[i].writeByte(DistributedWorker.SHUTDOWN);
+                        out[i].flush();
+                    } catch (IOException e) {
+                        // the worker is gone already
+                    }
+                }
+                if (sockets[i] != null) {
+                    sockets[i].close();
+                }
+            }
+            for (Process process : processes) {
+                if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the statistics of every worker at the end of the latest layer of the latest solve.
+     */
+    List<SearchStatistics> workerStatistics() {
+        return workerStatistics;
+    }
+
+    private interface Payload {
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+
+    private static void broadcast(DataOutputStream[] out, byte command, Payload payload) throws IOException {
+        for (DataOutputStream o : out) {
+            o.writeByte(command);
+            payload.writeTo(o);
+            o.flush();
+        }
+    }
+
+    private static Socket accept(ServerSocket server, long deadline) throws IOException, InterruptedException {
+        while (true) {
+            try {
+                return server.accept();
+            } catch (SocketTimeoutException e) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (System.nanoTime() > deadline) {
+                    throw new SocketTimeoutException("no worker connected within " + CONNECT_TIMEOUT_MILLIS + " ms.");
+                }
+            }
+        }
+    }
+
+    /**
+     * reads the first byte of the next message, checking for interrupts while none has arrived. a worker writes the
+     * rest of a message right after it, so only this first read is given a timeout.
+     */
+    private static void expect(Socket socket, DataInputStream in, byte command)
+            throws IOException, InterruptedException {
+        byte actual;
+        socket.setSoTimeout(POLL_MILLIS);
+        try {
+            while (true) {
+                try {
+                    actual = in.readByte();
+                    break;
+                } catch (SocketTimeoutException e) {
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+            }
+        } finally {
+            socket.setSoTimeout(0);
+        }
+        if (actual != command) {
+            throw new IOException("expected message " + command + " from a worker, got " + actual);
+        }
+    }
+
+    /**
+     * follows parent references from {@code reference} back to the start state, asking each owner for its state.
+     */
+    private static Deque<PuzzleMap> path(DataInputStream[] in, DataOutputStream[] out, long reference,
+                                         PuzzleMap root) throws IOException, InterruptedException {
+        Deque<PuzzleMap> path = new ArrayDeque<>();
+        Map<Character, Piece.Type> types = root.pieceTypes();
+        while (reference != DistributedWorker.NO_STATE) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            int worker = (int) (reference >>> 32);
+            out[worker].writeByte(DistributedWorker.NODE);
+            out[worker].writeInt((int) reference);
+            out[worker].flush();
+            reference = in[worker].readLong();
+            path.addFirst(PuzzleMap.readFrom(in[worker], root.border(), types));
+        }
+        return path;
+    }
+}
@@ -0,0 +1,374 @@
+package puzzle;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One process of a {@link DistributedPuzzleSolver}. A worker stores only the states it owns (those whose key hashes
+ * to its id) and expands them one breadth-first layer at a time, when the coordinator says so. Successors owned by
+ * other workers are sent to them in batches over direct localhost connections; an owner keeps the first copy of a
+ * state it sees, together with a reference to its parent, and drops the rest.
+ * <p>
+ * A layer ends when every worker has received as many batches as the others report to have sent it, which the
+ * coordinator checks by counting messages on every channel. A fast peer may already be expanding the next layer and
+ * sending its successors while this worker has yet to read the command to do so, so new states, whether received or
+ * generated, are only queued; a worker expands the frontier it promoted from that queue when it finished the previous
+ * layer, once every batch of that layer had arrived, and never a state of a later layer.
+ *
+ * @author ahmad
+ */
+final class DistributedWorker {
+
+    static final byte SETUP = 1;
+    static final byte READY = 2;
+    static final byte ROOT = 3;
+    static final byte EXPAND = 4;
+    static final byte SENT = 5;
+    static final byte EXPECT = 6;
+    static final byte LAYER = 7;
+    static final byte NODE = 8;
+    static final byte SHUTDOWN = 9;
+
+    /**
+     * a reference to no state; any other reference packs the id of the owning worker and the owner's local index.
+     */
+    static final long NO_STATE = -1;
+
+    private static final int BATCH_STATES = 1024;
+    private static final long ENTRY_BYTES = 48 + 8 + 4;
+
+    private final int id;
+    private final DataInputStream control;
+    private final DataOutputStream coordinator;
+
+    private int workers;
+    private PuzzleMap.Border border;
+    private Map<Character, Piece.Type> types;
+    private MoveSemantics semantics;
+    private Pruning pruning;
+    private long[] reportedHits;
+
+    private final Map<PuzzleMap, Integer> index = new HashMap<>();
+    private final List<PuzzleMap> states = new ArrayList<>();
+    private long[] parents = new long[1024];
+    private int[] next = new int[1024];
+    private int nextSize;
+    private int[] frontier = new int[0];
+    private long found = NO_STATE;
+    private long storedBytes;
+    private long expanded;
+    private int receivedBatches;
+    private IOException failure;
+
+    private DataOutputStream[] peers;
+    private ByteArrayOutputStream[] batches;
+    private DataOutputStream[] batchOut;
+    private int[] batchStates;
+    private int[] sentBatches;
+
+    private DistributedWorker(int id, Socket socket) throws IOException {
+        this.id = id;
+        control = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        coordinator = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    static int owner(long key, int workers) {
+        key = (key ^ (key >>> 33)) * 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        return (int) Long.remainderUnsigned(key, workers);
+    }
+
+    static long reference(int worker, int local) {
+        return (long) worker << 32 | local;
+    }
+
+    private void run() throws IOException, InterruptedException {
+        try (ServerSocket server = new ServerSocket(0, 64, InetAddress.getLoopbackAddress())) {
+            coordinator.writeInt(id);
+            coordinator.writeInt(server.getLocalPort());
+            coordinator.flush();
+            setup(server);
+        }
+        while (true) {
+            byte command = control.readByte();
+            switch (command) {
+                case ROOT:
+                    PuzzleMap root = PuzzleMap.readFrom(control, border, types);
+                    if (owner(root.key, workers) == id) {
+                        synchronized (this) {
+                            insert(root, NO_STATE);
+                            promote();
+                        }
+                    }
+                    break;
+                case EXPAND:
+                    expandLayer();
+                    break;
+                case EXPECT:
+                    finishLayer(control.readInt());
+                    break;
+                case NODE:
+                    int local = control.readInt();
+                    synchronized (this) {
+                        coordinator.writeLong(parents[local]);
+                        states.get(local).writeTo(coordinator);
+                    }
+                    coordinator.flush();
+                    break;
+                case SHUTDOWN:
+                    for (DataOutputStream peer : peers) {
+                        if (peer != null) {
+                            peer.close();
+                        }
+                    }
+                    return;
+                default:
+                    throw new IOException("unknown command: " + command);
+            }
+        }
+    }
+
+    private void setup(ServerSocket server) throws IOException, InterruptedException {
+        if (control.readByte() != SETUP) {
+            throw new IOException("expected setup.");
+        }
+        String board = control.readUTF();
+        StateHashStrategy hashStrategy = StateHashStrategy.valueOf(control.readUTF());
+        semantics = MoveSemantics.valueOf(control.readUTF());
+        PruningRule[] rules = new PruningRule[control.readInt()];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = StandardPruningRule.valueOf(control.readUTF());
+        }
+        pruning = Pruning.of(rules);
+        reportedHits = new long[rules.length];
+        workers = control.readInt();
+        int[] ports = new int[workers];
+        for (int i = 0; i < workers; i++) {
+            ports[i] = control.readInt();
+        }
+        try {
+            PuzzleMap start = PuzzleParser.parse(board, hashStrategy);
+            border = start.border();
+            types = start.pieceTypes();
+        } catch (ParseException e) {
+            throw new IOException("cannot parse the board.", e);
+        }
+
+        Thread acceptor = new Thread(() -> {
+            try {
+                for (int i = 0; i < workers - 1; i++) {
+                    Socket socket = server.accept();
+                    socket.setTcpNoDelay(true);
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                    in.readInt(); // the sender's id
+                    Thread reader = new Thread(() -> receive(in), "worker-" + id + "-reader");
+                    reader.setDaemon(true);
+                    reader.start();
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }, "worker-" + id + "-acceptor");
+        acceptor.start();
+
+        peers = new DataOutputStream[workers];
+        batches = new ByteArrayOutputStream[workers];
+        batchOut = new DataOutputStream[workers];
+        batchStates = new int[workers];
+        sentBatches = new int[workers];
+        for (int i = 0; i < workers; i++) {
+            if (i != id) {
+                Socket socket = new Socket(InetAddress.getLoopbackAddress(), ports[i]);
+                socket.setTcpNoDelay(true);
+                peers[i] = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+                peers[i].writeInt(id);
+                peers[i].flush();
+                batches[i] = new ByteArrayOutputStream();
+                batchOut[i] = new DataOutputStream(batches[i]);
+            }
+        }
+        acceptor.join();
+        checkFailure();
+        coordinator.writeByte(READY);
+        coordinator.flush();
+    }
+
+    private void expandLayer() throws IOException {
+        PuzzleMap[] layer = new PuzzleMap[frontier.length];
+        long[] references = new long[frontier.length];
+        synchronized (this) {
+            for (int i = 0; i < frontier.length; i++) {
+                layer[i] = states.get(frontier[i]);
+                references[i] = reference(id, frontier[i]);
+            }
+        }
+        for (int i = 0; i < layer.length; i++) {
+            PuzzleMap puzzle = layer[i];
+            expanded++;
+            for (PuzzleMap successor : puzzle.successors(semantics)) {
+                if (!pruning.keep(puzzle, successor)) {
+                    continue;
+                }
+                int owner = owner(successor.key, workers);
+                if (owner == id) {
+                    synchronized (this) {
+                        insert(successor, references[i]);
+                    }
+                } else {
+                    batchOut[owner].writeLong(references[i]);
+                    successor.writeTo(batchOut[owner]);
+                    if (++batchStates[owner] == BATCH_STATES) {
+                        send(owner);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < workers; i++) {
+            if (i != id && batchStates[i] > 0) {
+                send(i);
+            }
+        }
+        coordinator.writeByte(SENT);
+        for (int i = 0; i < workers; i++) {
+            coordinator.writeInt(sentBatches[i]);
+        }
+        coordinator.flush();
+        Arrays.fill(sentBatches, 0);
+    }
+
+    private void send(int worker) throws IOException {
+        batchOut[worker].flush();
+        DataOutputStream peer = peers[worker];
+        peer.writeInt(batchStates[worker]);
+        peer.writeInt(batches[worker].size());
+        batches[worker].writeTo(peer);
+        peer.flush();
+        batches[worker].reset();
+        batchStates[worker] = 0;
+        sentBatches[worker]++;
+    }
+
+    private void receive(DataInputStream in) {
+        try {
+            while (true) {
+                int count;
+                try {
+                    count = in.readInt();
+                } catch (EOFException e) {
+                    return; // the sender shut down
+                }
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                DataInputStream batch = new DataInputStream(new ByteArrayInputStream(bytes));
+                long[] references = new long[count];
+                PuzzleMap[] puzzles = new PuzzleMap[count];
+                for (int i = 0; i < count; i++) {
+                    references[i] = batch.readLong();
+                    puzzles[i] = PuzzleMap.readFrom(batch, border, types);
+                }
+                synchronized (this) {
+                    for (int i = 0; i < count; i++) {
+                        insert(puzzles[i], references[i]);
+                    }
+                    receivedBatches++;
+                    notifyAll();
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private synchronized void finishLayer(int expected) throws IOException, InterruptedException {
+        while (receivedBatches < expected) {
+            checkFailure();
+            wait(100);
+        }
+        receivedBatches -= expected;
+        promote();
+        coordinator.writeByte(LAYER);
+        coordinator.writeLong(frontier.length);
+        coordinator.writeLong(found);
+        coordinator.writeLong(expanded);
+        coordinator.writeLong(states.size());
+        coordinator.writeLong(storedBytes);
+        // only the hits of this layer, since the coordinator adds them up
+        for (int i = 0; i < reportedHits.length; i++) {
+            long hits = pruning.hits(i);
+            coordinator.writeLong(hits - reportedHits[i]);
+            reportedHits[i] = hits;
+        }
+        coordinator.flush();
+    }
+
+    /**
+     * makes the queued states the layer to expand next. callers hold the lock.
+     */
+    private void promote() {
+        frontier = Arrays.copyOf(next, nextSize);
+        nextSize = 0;
+    }
+
+    /**
+     * keeps {@code puzzle} if this is the first time this worker sees it. callers hold the lock.
+     */
+    private void insert(PuzzleMap puzzle, long parent) {
+        int local = states.size();
+        if (index.putIfAbsent(puzzle, local) != null) {
+            return;
+        }
+        states.add(puzzle);
+        if (local == parents.length) {
+            parents = Arrays.copyOf(parents, local * 2);
+        }
+        parents[local] = parent;
+        storedBytes += puzzle.estimatedBytes() + ENTRY_BYTES;
+        if (puzzle.isSolved) {
+            if (found == NO_STATE) {
+                found = reference(id, local);
+            }
+            return;
+        }
+        if (nextSize == next.length) {
+            next = Arrays.copyOf(next, nextSize * 2);
+        }
+        next[nextSize++] = local;
+    }
+
+    private synchronized void fail(IOException e) {
+        if (failure == null) {
+            failure = e;
+        }
+        notifyAll();
+    }
+
+    private synchronized void checkFailure() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * {@code DistributedWorker <coordinator port> <worker id>}
+     */
+    public static void main(String[] args) {
+        int port = Integer.parseInt(args[0]);
+        int id = Integer.parseInt(args[1]);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            new DistributedWorker(id, socket).run();
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+}
@@ -7,71 +7,106 @@ import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveTask;
 
 /**
+ * A depth-first search that forks the two most promising successors of every state and shares one history of
+ * visited states between all tasks.
+ * <p>
+ * A task that joins its subtasks may run them on its own stack, so the stack grows with the depth of the search. The
+ * search is therefore bounded in depth: it starts with a limit of {@value #INITIAL_DEPTH} moves and starts over with
+ * twice the limit, and a fresh history, whenever it was cut off without finding a solution, up to
+ * {@value #MAX_DEPTH} moves. States at the limit are not recorded in the history, so only a search that was not cut
+ * off has seen every reachable state and may report a puzzle as unsolvable; a search still cut off at
+ * {@value #MAX_DEPTH} moves gives up and reports it the same way.
+ * <p>
+ * The history makes the result depend on which task reaches a state first, and a task that loses a state to another
+ * has already searched below it, so no order settled after the fact makes the result independent of thread timing.
+ * Deterministic mode is therefore refused; use the A* or breadth-first solvers when a deterministic parallel search is
+ * needed.
+ *
  * @author ahmad
  */
 final class ForkJoinPuzzleSolver implements HeuristicPuzzleSolver {
 
+    private static final int INITIAL_DEPTH = 32;
+    private static final int MAX_DEPTH = 1024;
+
     private static final class Solution {
 
-        private Deque<PuzzleMap> path;
+        // other tasks read the solution of a state they find in the history at any time, so a path is only ever
+        // published whole and never changed afterwards
+        private volatile Deque<PuzzleMap> path;
 
         boolean isSolved() {
             return path != null;
         }
 
         int size() {
+            Deque<PuzzleMap> path = this.path;
             return path == null ? Integer.MAX_VALUE : path.size();
         }
 
-        Solution copy(Solution other) {
-            path = new ArrayDeque<>(other.path);
-            return this;
-        }
-
-        Solution addFirst(PuzzleMap puzzle) {
-            if (path == null) {
-                path = new ArrayDeque<>();
-            }
+        /**
+         * sets the path to {@code puzzle} followed by the path of {@code rest}, if there is one.
+         */
+        Solution solve(PuzzleMap puzzle, Solution rest) {
+            Deque<PuzzleMap> path = rest == null ? new ArrayDeque<>() : new ArrayDeque<>(rest.path);
             path.addFirst(puzzle);
+            this.path = path;
             return this;
         }
     }
 
     private static final class Context {
+
         private final ConcurrentMap<PuzzleMap, Solution> history = new ConcurrentHashMap<>();
+        private final int limit;
+        private volatile boolean cutOff;
+
+        private Context(int limit) {
+            this.limit = limit;
+        }
     }
 
     private static final class PuzzleComparator implements Comparator<PuzzleMap> {
 
-        private final HeuristicAlgorithm algorithm;
+        private final Heuristic heuristic;
 
-        private PuzzleComparator(HeuristicAlgorithm algorithm) {
-            this.algorithm = algorithm;
+        private PuzzleComparator(Heuristic heuristic) {
+            this.heuristic = heuristic;
         }
 
         @Override
         public int compare(PuzzleMap lhs, PuzzleMap rhs) {
-            double l = lhs.estimatedDistanceToGoal(algorithm);
-            double r = rhs.estimatedDistanceToGoal(algorithm);
+            double l = heuristic.estimate(lhs);
+            double r = heuristic.estimate(rhs);
             return Double.compare(l, r);
         }
     }
 
     private final class SearchTask extends RecursiveTask<Solution> {
 
-        private final PuzzleMap puzzle;
-        private final HeuristicAlgorithm algorithm;
-        private final Context context;
+        private static final long serialVersionUID = 1L;
+
+        // RecursiveTask is Serializable, but a task never leaves the pool that runs it
+        private final transient PuzzleMap puzzle;
+        private final transient Heuristic heuristic;
+        private final transient Context context;
+        private final int depth;
 
-        private SearchTask(PuzzleMap puzzle, HeuristicAlgorithm algorithm, Context context) {
+        private SearchTask(PuzzleMap puzzle, Heuristic heuristic, Context context, int depth) {
             this.puzzle = puzzle;
-            this.algorithm = algorithm;
+            this.heuristic = heuristic;
             this.context = context;
+            this.depth = depth;
         }
 
         @Override
         protected Solution compute() {
 
+            if (depth >= context.limit && !puzzle.isSolved) {
+                context.cutOff = true;
+                return new Solution();
+            }
+
             boolean[] seen = {true};
             Solution solution = context.history.computeIfAbsent(puzzle, k -> {
                 seen[0] = false;
@@ -82,26 +117,20 @@ final class ForkJoinPuzzleSolver implements HeuristicPuzzleSolver {
                 return solution;
             }
             if (puzzle.isSolved) {
-                return solution.addFirst(puzzle);
+                return solution.solve(puzzle, null);
             }
 
-            PriorityQueue<PuzzleMap> neighbours = new PriorityQueue<>(new PuzzleComparator(algorithm));
-
-            Set<Piece> pieces = puzzle.movablePieces();
-            for (Piece piece : pieces) {
-                for (MoveStrategy strategy : MoveStrategy.values()) {
-                    try {
-                        neighbours.add(puzzle.move(piece, strategy));
-                    } catch (BadMoveException ignored) {
-                        // simply ignore this exception
-                    }
+            PriorityQueue<PuzzleMap> neighbours = new PriorityQueue<>(new PuzzleComparator(heuristic));
+            for (PuzzleMap successor : puzzle.successors(options.moveSemantics)) {
+                if (options.pruning.keep(puzzle, successor)) {
+                    neighbours.add(successor);
                 }
             }
 
             while (neighbours.size() > 0) {
                 List<SearchTask> tasks = new ArrayList<>();
                 for (int i = 0; i < 2 && neighbours.size() > 0; i++) {
-                    SearchTask task = new SearchTask(neighbours.poll(), algorithm, context);
+                    SearchTask task = new SearchTask(neighbours.poll(), heuristic, context, depth + 1);
                     tasks.add(task);
                     task.fork();
                 }
@@ -115,7 +144,7 @@ final class ForkJoinPuzzleSolver implements HeuristicPuzzleSolver {
                 }
 
                 if (best.isSolved()) {
-                    solution.copy(best).addFirst(puzzle);
+                    solution.solve(puzzle, best);
                     break;
                 }
             }
@@ -124,17 +153,41 @@ final class ForkJoinPuzzleSolver implements HeuristicPuzzleSolver {
         }
     }
 
+    private final SolverOptions options;
+
+    ForkJoinPuzzleSolver(SolverOptions options) {
+        if (options.deterministic) {
+            throw new IllegalArgumentException("the fork/join solver has no deterministic mode.");
+        }
+        this.options = options;
+    }
+
     @Override
-    public Deque<PuzzleMap> solve(PuzzleMap start, HeuristicAlgorithm algorithm) {
-        return solveParallel(start, algorithm, Runtime.getRuntime().availableProcessors());
+    public Deque<PuzzleMap> solve(PuzzleMap start, Heuristic heuristic) {
+        return solveParallel(start, heuristic, Runtime.getRuntime().availableProcessors());
     }
 
     @Override
-    public Deque<PuzzleMap> solveParallel(PuzzleMap start, HeuristicAlgorithm algorithm, int parallelism) {
+    public Deque<PuzzleMap> solveParallel(PuzzleMap start, Heuristic heuristic, int parallelism) {
         ForkJoinPool fjp = new ForkJoinPool(parallelism);
-        SearchTask search = new SearchTask(start, algorithm, new Context());
-        Solution solution = fjp.invoke(search);
-        fjp.shutdown();
-        return solution.path;
+        try {
+            for (int limit = INITIAL_DEPTH; ; limit = Math.min(limit * 2, MAX_DEPTH)) {
+                Context context = new Context(limit);
+                Solution solution = fjp.invoke(new SearchTask(start, heuristic, context, 0));
+                if (solution.isSolved() || !context.cutOff || limit == MAX_DEPTH) {
+                    return solution.path;
+                }
+            }
+        } finally {
+            fjp.shutdown();
+        }
+    }
+
+    /**
+     * @return {@code false}: the tasks never check for interrupts, so a solve always runs to the end.
+     */
+    @Override
+    public boolean stopsWhenInterrupted() {
+        return false;
     }
 }
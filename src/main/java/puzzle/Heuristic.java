@@ -0,0 +1,71 @@
+package puzzle;
+
+import java.util.Objects;
+
+/**
+ * Estimates how many moves are left to solve a puzzle. Implementations read the compact state through the
+ * allocation-free accessors of {@link PuzzleMap} ({@link PuzzleMap#pieceAt}, {@link PuzzleMap#pieceX} and so on) and
+ * are called once for every generated state, so they should not allocate.
+ * <p>
+ * Solvers rank states by {@code f = g * moveCost() + estimate(state)}, where {@code g} is the number of moves made so
+ * far. A heuristic that never overestimates the remaining moves (admissible), with the default move cost of 1, makes
+ * A* return shortest solutions.
+ *
+ * @author ahmad
+ */
+@FunctionalInterface
+public interface Heuristic {
+
+    double estimate(PuzzleMap puzzle);
+
+    /**
+     * @return the weight of one move in {@code f}. values below 1 make the search greedier.
+     */
+    default double moveCost() {
+        return 1;
+    }
+
+    /**
+     * @return the largest estimate of the given heuristics, which is admissible (or consistent) if all of them are.
+     */
+    static Heuristic max(Heuristic... heuristics) {
+        Heuristic[] components = components(heuristics);
+        return puzzle -> {
+            double max = 0;
+            for (Heuristic heuristic : components) {
+                max = Math.max(max, heuristic.estimate(puzzle));
+            }
+            return max;
+        };
+    }
+
+    /**
+     * @return {@code sum(weights[i] * heuristics[i])}. admissible if the weights add up to at most 1 and every
+     * heuristic is admissible.
+     */
+    static Heuristic weightedSum(double[] weights, Heuristic... heuristics) {
+        Heuristic[] components = components(heuristics);
+        if (weights.length != components.length) {
+            throw new IllegalArgumentException("expected " + components.length + " weights, got " + weights.length);
+        }
+        double[] w = weights.clone();
+        return puzzle -> {
+            double sum = 0;
+            for (int i = 0; i < components.length; i++) {
+                sum += w[i] * components[i].estimate(puzzle);
+            }
+            return sum;
+        };
+    }
+
+    private static Heuristic[] components(Heuristic[] heuristics) {
+        if (heuristics.length == 0) {
+            throw new IllegalArgumentException("no heuristics to combine");
+        }
+        Heuristic[] components = heuristics.clone();
+        for (Heuristic heuristic : components) {
+            Objects.requireNonNull(heuristic);
+        }
+        return components;
+    }
+}
@@ -1,9 +1,12 @@
 package puzzle;
 
 /**
+ * Distance metrics between the main piece and the exits, averaged over every exit cell. The {@link #epsilon} move
+ * cost makes the search close to greedy best-first.
+ *
  * @author ahmad
  */
-public enum HeuristicAlgorithm {
+public enum HeuristicAlgorithm implements Heuristic {
 
     MANHATTAN(0.001) {
         @Override
@@ -38,4 +41,14 @@ public enum HeuristicAlgorithm {
     }
 
     abstract double heuristic(int x1, int y1, int x2, int y2);
+
+    @Override
+    public double estimate(PuzzleMap puzzle) {
+        return puzzle.estimatedDistanceToGoal(this);
+    }
+
+    @Override
+    public double moveCost() {
+        return epsilon;
+    }
 }
@@ -7,7 +7,15 @@ import java.util.Deque;
  */
 public interface HeuristicPuzzleSolver {
 
-    Deque<PuzzleMap> solve(PuzzleMap start, HeuristicAlgorithm algorithm) throws Exception;
+    Deque<PuzzleMap> solve(PuzzleMap start, Heuristic heuristic) throws Exception;
 
-    Deque<PuzzleMap> solveParallel(PuzzleMap start, HeuristicAlgorithm algorithm, int parallelism) throws Exception;
+    Deque<PuzzleMap> solveParallel(PuzzleMap start, Heuristic heuristic, int parallelism) throws Exception;
+
+    /**
+     * @return {@code true} if a solve stops soon after its thread is interrupted, which deadline-bounded serving such
+     * as {@link SolveServer} relies on to cancel it.
+     */
+    default boolean stopsWhenInterrupted() {
+        return true;
+    }
 }
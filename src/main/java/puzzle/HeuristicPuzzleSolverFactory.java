@@ -9,10 +9,44 @@ public final class HeuristicPuzzleSolverFactory {
     }
 
     public static HeuristicPuzzleSolver getAStarPuzzleSolver() {
-        return new AStarPuzzleSolver();
+        return getAStarPuzzleSolver(SolverOptions.defaults());
+    }
+
+    public static HeuristicPuzzleSolver getAStarPuzzleSolver(SolverOptions options) {
+        return new AStarPuzzleSolver(options);
     }
 
     public static HeuristicPuzzleSolver getForkJoinPuzzleSolver() {
-        return new ForkJoinPuzzleSolver();
+        return getForkJoinPuzzleSolver(SolverOptions.defaults());
+    }
+
+    /**
+     * @return a solver whose solves run to the end even when their thread is interrupted, which makes it unfit for
+     * deadline-bounded serving such as {@link SolveServer}; see {@link HeuristicPuzzleSolver#stopsWhenInterrupted}.
+     * @throws IllegalArgumentException if {@code options} ask for determinism, which this solver cannot provide.
+     */
+    public static HeuristicPuzzleSolver getForkJoinPuzzleSolver(SolverOptions options) {
+        return new ForkJoinPuzzleSolver(options);
+    }
+
+    public static HeuristicPuzzleSolver getBreadthFirstPuzzleSolver() {
+        return getBreadthFirstPuzzleSolver(SolverOptions.defaults());
+    }
+
+    public static HeuristicPuzzleSolver getBreadthFirstPuzzleSolver(SolverOptions options) {
+        return new BreadthFirstPuzzleSolver(options);
+    }
+
+    public static HeuristicPuzzleSolver getDistributedPuzzleSolver() {
+        return getDistributedPuzzleSolver(SolverOptions.defaults());
+    }
+
+    /**
+     * @return a solver that runs every solve in worker JVMs on this host, started with the class path of this one.
+     * @throws IllegalArgumentException if {@code options} ask for determinism, a memory budget, a tracer or pruning
+     * rules other than the {@link StandardPruningRule}s, which this solver cannot honour.
+     */
+    public static HeuristicPuzzleSolver getDistributedPuzzleSolver(SolverOptions options) {
+        return new DistributedPuzzleSolver(options);
     }
 }
@@ -0,0 +1,28 @@
+package puzzle;
+
+/**
+ * @author ahmad
+ */
+public enum MoveSemantics {
+
+    /**
+     * a move slides one piece exactly one cell.
+     */
+    SINGLE_STEP(false, false),
+    /**
+     * a move slides one piece any number of cells in a single direction.
+     */
+    STRAIGHT_LINE(true, false),
+    /**
+     * a move slides one piece along any path of empty cells, turning corners included.
+     */
+    ANY_PATH(true, true);
+
+    final boolean multiStep;
+    final boolean turns;
+
+    MoveSemantics(boolean multiStep, boolean turns) {
+        this.multiStep = multiStep;
+        this.turns = turns;
+    }
+}
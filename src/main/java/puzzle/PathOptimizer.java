@@ -0,0 +1,307 @@
+package puzzle;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Shortens a solution found by a solver that does not promise shortest paths, such as {@link ForkJoinPuzzleSolver} or
+ * a greedy heuristic, in two passes:
+ * <ol>
+ * <li>shortcuts: a breadth-first search of a few moves from every state of the path collects each later state of the
+ * path (or any solved state) it reaches in fewer moves than the path takes. The path is split into windows that are
+ * searched in parallel, and the shortest path through the original moves and the shortcuts is then picked over the
+ * path indices. A state that occurs twice is a shortcut of no moves.</li>
+ * <li>merging: consecutive moves of the same piece become one move wherever the move semantics allow it, such as two
+ * steps in the same direction under {@link MoveSemantics#STRAIGHT_LINE}. Under {@link MoveSemantics#SINGLE_STEP} no
+ * two moves can merge.</li>
+ * </ol>
+ * Every state of the optimized path that differs from the original one in how it was reached is the state a move
+ * really produced, so its title describes the move that leads to it.
+ *
+ * @author ahmad
+ */
+public final class PathOptimizer {
+
+    /**
+     * how a path was optimized.
+     */
+    public static final class Result {
+
+        public final Deque<PuzzleMap> path;
+        public final int originalMoves;
+        public final int shortcutMoves;
+        public final int optimizedMoves;
+        public final int shortcuts;
+        public final int mergedMoves;
+        public final long searchedNodes;
+        public final long elapsedNanos;
+
+        Result(Deque<PuzzleMap> path, int originalMoves, int shortcutMoves, int shortcuts, int mergedMoves,
+               long searchedNodes, long elapsedNanos) {
+            this.path = path;
+            this.originalMoves = originalMoves;
+            this.shortcutMoves = shortcutMoves;
+            this.optimizedMoves = path.size() - 1;
+            this.shortcuts = shortcuts;
+            this.mergedMoves = mergedMoves;
+            this.searchedNodes = searchedNodes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int savedMoves() {
+            return originalMoves - optimizedMoves;
+        }
+
+        @Override
+        public String toString() {
+            return "moves = " + originalMoves + " -> " + optimizedMoves +
+                    String.format(" (%.1f%% shorter)", 100.0 * savedMoves() / Math.max(1, originalMoves)) +
+                    ", shortcuts = " + shortcuts + " saving " + (originalMoves - shortcutMoves) + " moves" +
+                    ", merged = " + mergedMoves + " moves" +
+                    ", searched = " + searchedNodes + " nodes" +
+                    ", elapsed = " + elapsedNanos / 1_000_000 + " ms";
+        }
+    }
+
+    /**
+     * a way from the state at {@code from} to the state at {@code to}: the states after each of its moves.
+     */
+    private static final class Shortcut {
+
+        final int from;
+        final int to;
+        final PuzzleMap[] states;
+
+        Shortcut(int from, int to, PuzzleMap[] states) {
+            this.from = from;
+            this.to = to;
+            this.states = states;
+        }
+    }
+
+    private static final int WINDOWS_PER_THREAD = 4;
+
+    private final MoveSemantics semantics;
+    private final int searchDepth;
+    private final int searchNodes;
+
+    /**
+     * @param searchDepth the most moves a shortcut may take, 0 to only remove repeated states.
+     * @param searchNodes the most states a single shortcut search may visit.
+     */
+    public PathOptimizer(SolverOptions options, int searchDepth, int searchNodes) {
+        if (searchDepth < 0 || searchNodes < 1) {
+            throw new IllegalArgumentException("invalid search bounds: depth = " + searchDepth +
+                    ", nodes = " + searchNodes);
+        }
+        this.semantics = options.moveSemantics;
+        this.searchDepth = searchDepth;
+        this.searchNodes = searchNodes;
+    }
+
+    public Result optimize(Deque<PuzzleMap> path) throws InterruptedException, ExecutionException {
+        return optimize(path, 1);
+    }
+
+    public Result optimize(Deque<PuzzleMap> path, int parallelism) throws InterruptedException, ExecutionException {
+        long startTime = System.nanoTime();
+        PuzzleMap[] states = path.toArray(new PuzzleMap[0]);
+        if (states.length == 0) {
+            throw new IllegalArgumentException("empty path.");
+        }
+        int n = states.length - 1;
+
+        // the last occurrence of every state, so that a shortcut skips as much of the path as it can
+        Map<PuzzleMap, Integer> positions = new HashMap<>();
+        for (int i = 0; i <= n; i++) {
+            positions.put(states[i], i);
+        }
+        boolean solved = states[n].isSolved;
+
+        int windows = Math.max(1, Math.min(n, parallelism * WINDOWS_PER_THREAD));
+        int window = (n + windows - 1) / Math.max(1, windows);
+        long[] searched = new long[Math.max(1, n)];
+        List<List<Shortcut>> found;
+        ForkJoinPool fjp = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            found = fjp.submit(() -> IntStream.range(0, windows)
+                    .parallel()
+                    .mapToObj(w -> {
+                        List<Shortcut> shortcuts = new ArrayList<>();
+                        for (int i = w * window; i < Math.min(n, (w + 1) * window); i++) {
+                            searched[i] = search(states, i, positions, solved, shortcuts);
+                        }
+                        return shortcuts;
+                    })
+                    .collect(Collectors.toList())).get();
+        } finally {
+            fjp.shutdown();
+        }
+
+        // the shortest way over the path indices: every edge leads forward, so one pass in index order is enough
+        int[] cost = new int[n + 1];
+        Shortcut[] via = new Shortcut[n + 1];
+        Arrays.fill(cost, Integer.MAX_VALUE);
+        cost[0] = 0;
+        List<List<Shortcut>> outgoing = byOrigin(found, n);
+        for (int i = 0; i < n; i++) {
+            if (cost[i] + 1 < cost[i + 1]) {
+                cost[i + 1] = cost[i] + 1;
+                via[i + 1] = null;
+            }
+            for (Shortcut shortcut : outgoing.get(i)) {
+                if (cost[i] + shortcut.states.length < cost[shortcut.to]) {
+                    cost[shortcut.to] = cost[i] + shortcut.states.length;
+                    via[shortcut.to] = shortcut;
+                }
+            }
+        }
+        int shortcuts = 0;
+        Deque<PuzzleMap> shortened = new ArrayDeque<>();
+        for (int i = n; i > 0; ) {
+            Shortcut shortcut = via[i];
+            if (shortcut == null) {
+                shortened.addFirst(states[i--]);
+            } else {
+                for (int s = shortcut.states.length - 1; s >= 0; s--) {
+                    shortened.addFirst(shortcut.states[s]);
+                }
+                shortcuts++;
+                i = shortcut.from;
+            }
+        }
+        shortened.addFirst(states[0]);
+        int shortcutMoves = shortened.size() - 1;
+
+        Deque<PuzzleMap> merged = merge(shortened);
+        long nodes = 0;
+        for (long s : searched) {
+            nodes += s;
+        }
+        return new Result(merged, n, shortcutMoves, shortcuts, shortcutMoves - (merged.size() - 1), nodes,
+                System.nanoTime() - startTime);
+    }
+
+    /**
+     * a breadth-first search of at most {@link #searchDepth} moves from the state at {@code from}.
+     *
+     * @return the number of states visited.
+     */
+    private long search(PuzzleMap[] states, int from, Map<PuzzleMap, Integer> positions, boolean solved,
+                        List<Shortcut> shortcuts) {
+        int n = states.length - 1;
+        Integer repeated = positions.get(states[from]);
+        if (repeated > from) {
+            shortcuts.add(new Shortcut(from, repeated, new PuzzleMap[0]));
+        }
+        if (searchDepth < 1) {
+            return 0;
+        }
+        Map<PuzzleMap, PuzzleMap> parents = new HashMap<>();
+        parents.put(states[from], null);
+        List<PuzzleMap> layer = Collections.singletonList(states[from]);
+        for (int depth = 1; depth <= searchDepth && !layer.isEmpty(); depth++) {
+            List<PuzzleMap> next = new ArrayList<>();
+            for (PuzzleMap puzzle : layer) {
+                for (PuzzleMap successor : puzzle.successors(semantics)) {
+                    if (parents.size() >= searchNodes) {
+                        return parents.size();
+                    }
+                    if (parents.putIfAbsent(successor, puzzle) != null) {
+                        continue;
+                    }
+                    int to;
+                    if (successor.isSolved) {
+                        if (!solved) {
+                            continue;
+                        }
+                        to = n;
+                    } else {
+                        Integer position = positions.get(successor);
+                        to = position == null ? -1 : position;
+                        next.add(successor);
+                    }
+                    if (to - from > depth) {
+                        PuzzleMap[] way = new PuzzleMap[depth];
+                        PuzzleMap s = successor;
+                        for (int m = depth - 1; m >= 0; m--, s = parents.get(s)) {
+                            way[m] = s;
+                        }
+                        shortcuts.add(new Shortcut(from, to, way));
+                    }
+                }
+            }
+            layer = next;
+        }
+        return parents.size();
+    }
+
+    private static List<List<Shortcut>> byOrigin(List<List<Shortcut>> found, int n) {
+        List<List<Shortcut>> outgoing = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            outgoing.add(new ArrayList<>());
+        }
+        for (List<Shortcut> shortcuts : found) {
+            for (Shortcut shortcut : shortcuts) {
+                outgoing.get(shortcut.from).add(shortcut);
+            }
+        }
+        return outgoing;
+    }
+
+    /**
+     * replaces every run of moves of one piece with as few moves as the semantics allow.
+     */
+    private Deque<PuzzleMap> merge(Deque<PuzzleMap> path) {
+        List<PuzzleMap> result = new ArrayList<>();
+        List<PuzzleMap> moves = new ArrayList<>();
+        for (PuzzleMap puzzle : path) {
+            int size = result.size();
+            if (size >= 1) {
+                puzzle = reached(result.get(size - 1), puzzle);
+            }
+            if (size >= 2 && semantics.multiStep && samePiece(result.get(size - 1), puzzle)) {
+                PuzzleMap before = result.get(size - 2);
+                PuzzleMap last = result.get(size - 1);
+                // the main piece may stick out of the board, where there are no cells to look it up by
+                int id = last.movedFrom.type.isMain ? before.mainPiece()
+                        : before.pieceAt(last.movedFrom.x, last.movedFrom.y);
+                moves.clear();
+                before.moves(id, semantics, moves);
+                int index = moves.indexOf(puzzle);
+                if (index >= 0) {
+                    result.set(size - 1, moves.get(index));
+                    continue;
+                }
+            }
+            result.add(puzzle);
+        }
+        return new ArrayDeque<>(result);
+    }
+
+    /**
+     * a solver may return a state that it first reached from another parent than the one before it in the path, such
+     * as one the fork/join solver found in its history, and the move recorded in that state does not lead from
+     * {@code previous}.
+     *
+     * @return the successor of {@code previous} equal to {@code puzzle}, or {@code puzzle} if there is none.
+     */
+    private PuzzleMap reached(PuzzleMap previous, PuzzleMap puzzle) {
+        for (PuzzleMap successor : previous.successors(semantics)) {
+            if (successor.equals(puzzle)) {
+                return successor;
+            }
+        }
+        return puzzle;
+    }
+
+    /**
+     * @return whether {@code next} moves the piece that the move into {@code puzzle} moved.
+     */
+    private static boolean samePiece(PuzzleMap puzzle, PuzzleMap next) {
+        return puzzle.movedTo != null && next.movedFrom != null && puzzle.movedTo.equals(next.movedFrom);
+    }
+}
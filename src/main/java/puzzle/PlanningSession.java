@@ -0,0 +1,203 @@
+package puzzle;
+
+import java.util.*;
+
+/**
+ * An interactive solving session: the player makes moves and the session answers with the best continuation from
+ * wherever the player now is, reusing what its earlier searches found.
+ * <p>
+ * Every plan comes from an A* over moves ({@code f = g + h}; the move cost of the heuristic is not used) that
+ * remembers two things across plans:
+ * <ul>
+ * <li>for every state on a solution found so far, the exact number of moves left and the next move. A search that
+ * polls such a state is done at once, since no other open state can lead to a shorter solution. A player following
+ * the plan therefore gets the next plan without any search.</li>
+ * <li>for every other state a search expanded, the bound {@code C - g}, where {@code C} is the cost of the solution
+ * that search found and {@code g} the cost of the path that reached the state. Any solution through the state costs
+ * at least {@code C}, so the bound never overestimates, and it is usually far tighter than the heuristic around the
+ * states the player is likely to move to next.</li>
+ * </ul>
+ * Plans are shortest solutions when the heuristic is admissible, such as the {@link StandardHeuristic}s under the move
+ * semantics they document. A session is not thread-safe.
+ *
+ * @author ahmad
+ */
+public final class PlanningSession {
+
+    private static final class Node {
+
+        final PuzzleMap puzzle;
+        final double h;
+
+        Node parent;
+        int g = Integer.MAX_VALUE;
+        boolean expanded;
+
+        Node(PuzzleMap puzzle, double h) {
+            this.puzzle = puzzle;
+            this.h = h;
+        }
+    }
+
+    private static final class OpenEntry {
+
+        final Node node;
+        final int g;
+        final double f;
+
+        OpenEntry(Node node, int g) {
+            this.node = node;
+            this.g = g;
+            f = g + node.h;
+        }
+    }
+
+    /**
+     * lowest f first, then the deepest entry, which reaches states with a known remainder sooner.
+     */
+    private static final Comparator<OpenEntry> ORDER = Comparator.<OpenEntry>comparingDouble(e -> e.f)
+            .thenComparingDouble(e -> e.node.h)
+            .thenComparingLong(e -> e.node.puzzle.key);
+
+    private final Heuristic heuristic;
+    private final SolverOptions options;
+
+    private final Map<PuzzleMap, Integer> distances = new HashMap<>();
+    private final Map<PuzzleMap, PuzzleMap> nextMoves = new HashMap<>();
+    private final Map<PuzzleMap, Double> bounds = new HashMap<>();
+
+    private PuzzleMap current;
+    private Deque<PuzzleMap> plan;
+    private long expandedNodes;
+
+    public PlanningSession(PuzzleMap start, Heuristic heuristic, SolverOptions options) {
+        this.current = Objects.requireNonNull(start);
+        this.heuristic = Objects.requireNonNull(heuristic);
+        this.options = Objects.requireNonNull(options);
+    }
+
+    public PuzzleMap current() {
+        return current;
+    }
+
+    /**
+     * @return the best known solution from the current state, starting with the current state, or {@code null} if it
+     * cannot be solved.
+     */
+    public Deque<PuzzleMap> plan() throws InterruptedException {
+        if (plan == null) {
+            plan = search(current);
+        }
+        return plan == null ? null : new ArrayDeque<>(plan);
+    }
+
+    /**
+     * makes {@code next}, usually a successor of the current state, the current state and plans from it.
+     */
+    public Deque<PuzzleMap> moveTo(PuzzleMap next) throws InterruptedException {
+        current = Objects.requireNonNull(next);
+        plan = null;
+        return plan();
+    }
+
+    /**
+     * @return the number of states expanded by the search behind the latest plan, 0 if it needed no search.
+     */
+    public long expandedNodes() {
+        return expandedNodes;
+    }
+
+    /**
+     * @return the number of states whose exact distance to a solution this session knows.
+     */
+    public int knownStates() {
+        return distances.size();
+    }
+
+    private Deque<PuzzleMap> search(PuzzleMap start) throws InterruptedException {
+        expandedNodes = 0;
+        if (start.isSolved || distances.containsKey(start)) {
+            return follow(start);
+        }
+
+        Map<PuzzleMap, Node> nodes = new HashMap<>();
+        PriorityQueue<OpenEntry> open = new PriorityQueue<>(ORDER);
+        Node root = node(start);
+        root.g = 0;
+        nodes.put(start, root);
+        open.add(new OpenEntry(root, 0));
+
+        while (open.size() > 0) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            OpenEntry entry = open.poll();
+            Node node = entry.node;
+            if (entry.g > node.g) {
+                continue; // superseded by a cheaper path
+            }
+            Integer remaining = node.puzzle.isSolved ? Integer.valueOf(0) : distances.get(node.puzzle);
+            if (remaining != null) {
+                int cost = node.g + remaining;
+                learn(nodes.values(), cost);
+                return remember(node, cost);
+            }
+            node.expanded = true;
+            expandedNodes++;
+            for (PuzzleMap successor : node.puzzle.successors(options.moveSemantics)) {
+                if (!options.pruning.keep(node.puzzle, successor)) {
+                    continue;
+                }
+                Node child = nodes.computeIfAbsent(successor, this::node);
+                if (node.g + 1 < child.g) {
+                    child.g = node.g + 1;
+                    child.parent = node;
+                    open.add(new OpenEntry(child, child.g));
+                }
+            }
+        }
+        return null;
+    }
+
+    private Node node(PuzzleMap puzzle) {
+        Integer distance = distances.get(puzzle);
+        if (distance != null) {
+            return new Node(puzzle, distance);
+        }
+        double h = heuristic.estimate(puzzle);
+        Double bound = bounds.get(puzzle);
+        return new Node(puzzle, bound == null ? h : Math.max(h, bound));
+    }
+
+    private void learn(Collection<Node> nodes, int cost) {
+        for (Node node : nodes) {
+            if (node.expanded) {
+                bounds.merge(node.puzzle, (double) (cost - node.g), Math::max);
+            }
+        }
+    }
+
+    /**
+     * records the solution through {@code last}, whose remainder is already known, and returns it.
+     */
+    private Deque<PuzzleMap> remember(Node last, int cost) {
+        Deque<PuzzleMap> path = follow(last.puzzle);
+        PuzzleMap next = last.puzzle;
+        for (Node node = last.parent; node != null; node = node.parent) {
+            path.addFirst(node.puzzle);
+            distances.put(node.puzzle, cost - node.g);
+            nextMoves.put(node.puzzle, next);
+            bounds.remove(node.puzzle);
+            next = node.puzzle;
+        }
+        return path;
+    }
+
+    private Deque<PuzzleMap> follow(PuzzleMap puzzle) {
+        Deque<PuzzleMap> path = new ArrayDeque<>();
+        for (; puzzle != null; puzzle = nextMoves.get(puzzle)) {
+            path.addLast(puzzle);
+        }
+        return path;
+    }
+}
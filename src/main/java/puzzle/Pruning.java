@@ -0,0 +1,83 @@
+package puzzle;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pipeline of {@link PruningRule}s applied to every successor before it is enqueued. Rules are tried in order and
+ * the first one that prunes a successor is credited with the hit. Hit counters are cumulative over every solve the
+ * instance takes part in.
+ *
+ * @author ahmad
+ */
+public final class Pruning {
+
+    private static final Pruning NONE = new Pruning();
+
+    private final List<PruningRule> rules;
+    private final LongAdder[] hits;
+
+    private Pruning(PruningRule... rules) {
+        this.rules = Arrays.asList(rules.clone());
+        hits = new LongAdder[rules.length];
+        Arrays.setAll(hits, i -> new LongAdder());
+    }
+
+    public static Pruning none() {
+        return NONE;
+    }
+
+    public static Pruning of(PruningRule... rules) {
+        return new Pruning(rules);
+    }
+
+    public static Pruning standard() {
+        return new Pruning(StandardPruningRule.values());
+    }
+
+    boolean keep(PuzzleMap parent, PuzzleMap successor) {
+        for (int i = 0; i < hits.length; i++) {
+            if (rules.get(i).prune(parent, successor)) {
+                hits[i].increment();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    List<PruningRule> rules() {
+        return rules;
+    }
+
+    /**
+     * credits the rule at {@code rule} in {@link #rules()} with hits counted elsewhere, such as in another process.
+     */
+    void addHits(int rule, long hits) {
+        this.hits[rule].add(hits);
+    }
+
+    long hits(int rule) {
+        return hits[rule].sum();
+    }
+
+    public long hits(PruningRule rule) {
+        int i = rules.indexOf(rule);
+        return i < 0 ? 0 : hits[i].sum();
+    }
+
+    public Map<PruningRule, Long> hits() {
+        Map<PruningRule, Long> result = new LinkedHashMap<>();
+        for (int i = 0; i < hits.length; i++) {
+            result.put(rules.get(i), hits[i].sum());
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Pruning" + hits();
+    }
+}
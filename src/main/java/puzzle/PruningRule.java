@@ -0,0 +1,12 @@
+package puzzle;
+
+/**
+ * @author ahmad
+ */
+public interface PruningRule {
+
+    /**
+     * @return {@code true} if {@code successor} should not be enqueued after expanding {@code parent}.
+     */
+    boolean prune(PuzzleMap parent, PuzzleMap successor);
+}
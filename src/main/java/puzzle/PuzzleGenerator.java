@@ -0,0 +1,360 @@
+package puzzle;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Generates hard levels: places the pieces of a template puzzle inside its border in every (or a random sample of)
+ * legal arrangement, explores the connected component of each arrangement once, and reports the state of every
+ * component that is farthest (in moves) from a solution.
+ * <p>
+ * Components are claimed through a shared owner table: every explored state is tagged with the id of the candidate
+ * that reached it, and a worker that runs into a state owned by a candidate with a lower id gives up, so each
+ * component is explored to the end and reported by exactly one worker.
+ *
+ * @author ahmad
+ */
+public final class PuzzleGenerator {
+
+    public static final class Level {
+
+        public final PuzzleMap start;
+        public final int depth;
+        public final int componentSize;
+
+        private Level(PuzzleMap start, int depth, int componentSize) {
+            this.start = start;
+            this.depth = depth;
+            this.componentSize = componentSize;
+        }
+
+        @Override
+        public String toString() {
+            return "depth = " + depth + ", component = " + componentSize + "\n" + start;
+        }
+    }
+
+    private static final class Candidate {
+
+        final PuzzleMap puzzle;
+        final long id;
+
+        Candidate(PuzzleMap puzzle, long id) {
+            this.puzzle = puzzle;
+            this.id = id;
+        }
+    }
+
+    private static final Candidate END = new Candidate(null, -1);
+
+    private static final int PLACEMENT_ATTEMPTS = 10_000;
+
+    private final PuzzleMap.Border border;
+    private final List<Piece.Type> types = new ArrayList<>();
+    private final int[] counts;
+    private final int empties;
+    private final SolverOptions options;
+
+    public PuzzleGenerator(PuzzleMap template, SolverOptions options) {
+        if (template.isSolved) {
+            throw new IllegalArgumentException("template puzzle must contain its main piece.");
+        }
+        this.border = template.border();
+        this.options = options;
+        Map<Piece.Type, Integer> map = new LinkedHashMap<>();
+        int area = 0;
+        for (Piece piece : template.pieces()) {
+            map.merge(piece.type, 1, Integer::sum);
+            area += piece.type.width * piece.type.height;
+        }
+        types.addAll(map.keySet());
+        types.sort(Comparator.comparingInt((Piece.Type type) -> -type.width * type.height)
+                .thenComparing(type -> type.label));
+        counts = types.stream().mapToInt(map::get).toArray();
+        empties = border.columns() * border.rows() - area;
+    }
+
+    /**
+     * explores every legal arrangement of the pieces.
+     */
+    public void generateAll(int parallelism, Consumer<Level> results) throws InterruptedException {
+        generate(sink -> place(0, new boolean[border.columns() * border.rows()], counts.clone(), empties,
+                new ArrayDeque<>(), sink), parallelism, results);
+    }
+
+    /**
+     * explores {@code samples} arrangements of the pieces drawn uniformly at random per piece.
+     *
+     * @throws IllegalArgumentException if the pieces can hardly ever be placed at random inside the border.
+     */
+    public void generateRandom(long samples, long seed, int parallelism, Consumer<Level> results)
+            throws InterruptedException {
+        generate(sink -> {
+            Random random = new Random(seed);
+            for (long i = 0; i < samples; i++) {
+                sink.accept(randomPlacement(random));
+            }
+        }, parallelism, results);
+    }
+
+    /**
+     * feeds the candidates of {@code producer} to {@code parallelism} workers and streams every component's hardest
+     * level to {@code results} as soon as it is known. {@code results} may be called from several threads at once.
+     * If a worker fails, the producer stops at its next candidate and the failure is rethrown as an
+     * {@link IllegalStateException}.
+     */
+    private void generate(Consumer<Consumer<PuzzleMap>> producer, int parallelism, Consumer<Level> results)
+            throws InterruptedException {
+
+        BlockingQueue<Candidate> candidates = new ArrayBlockingQueue<>(1024);
+        ConcurrentMap<PuzzleMap, Long> owners = new ConcurrentHashMap<>();
+        AtomicLong ids = new AtomicLong();
+
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < parallelism; i++) {
+                futures.add(workers.submit(() -> {
+                    while (true) {
+                        Candidate candidate = candidates.take();
+                        if (candidate == END) {
+                            candidates.put(END);
+                            return null;
+                        }
+                        if (owners.putIfAbsent(candidate.puzzle, candidate.id) == null) {
+                            Level level = explore(candidate.puzzle, candidate.id, owners);
+                            if (level != null) {
+                                results.accept(level);
+                            }
+                        }
+                    }
+                }));
+            }
+
+            producer.accept(puzzle -> {
+                try {
+                    offer(candidates, new Candidate(puzzle, ids.getAndIncrement()), futures);
+                } catch (InterruptedException e) {
+                    throw new CancellationException();
+                }
+            });
+            offer(candidates, END, futures);
+
+            for (Future<?> future : futures) {
+                get(future);
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * queues {@code candidate}, checking while the queue is full that no worker has failed; a worker only returns
+     * before the end of the candidates by failing, and nobody would take from the queue then.
+     */
+    private static void offer(BlockingQueue<Candidate> candidates, Candidate candidate, List<Future<?>> futures)
+            throws InterruptedException {
+        while (!candidates.offer(candidate, 100, TimeUnit.MILLISECONDS)) {
+            for (Future<?> future : futures) {
+                if (future.isDone()) {
+                    get(future);
+                }
+            }
+        }
+    }
+
+    private static void get(Future<?> future) throws InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * explores the component of {@code start} and returns its hardest state, or {@code null} if the component belongs
+     * to a candidate with a lower id or cannot be solved at all.
+     */
+    private Level explore(PuzzleMap start, long id, ConcurrentMap<PuzzleMap, Long> owners) {
+        Map<PuzzleMap, Integer> indexes = new HashMap<>();
+        List<PuzzleMap> states = new ArrayList<>();
+        List<int[]> edges = new ArrayList<>();
+        indexes.put(start, 0);
+        states.add(start);
+
+        for (int i = 0; i < states.size(); i++) {
+            PuzzleMap puzzle = states.get(i);
+            if (puzzle.isSolved) {
+                edges.add(new int[0]);
+                continue;
+            }
+            List<PuzzleMap> successors = puzzle.successors(options.moveSemantics);
+            int[] adjacent = new int[successors.size()];
+            for (int j = 0; j < adjacent.length; j++) {
+                PuzzleMap successor = successors.get(j);
+                Integer index = indexes.get(successor);
+                if (index == null) {
+                    // solved states drop the main piece, so components that reach them through different exits
+                    // share them; only the states before the exit tell components apart
+                    if (!successor.isSolved && owners.merge(successor, id, Math::min) < id) {
+                        return null;
+                    }
+                    index = states.size();
+                    indexes.put(successor, index);
+                    states.add(successor);
+                }
+                adjacent[j] = index;
+            }
+            edges.add(adjacent);
+        }
+
+        // every move inside the board can be undone, so distances to the goal spread backwards along the same edges
+        int[] distance = new int[states.size()];
+        Arrays.fill(distance, -1);
+        int[] queue = new int[states.size()];
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < states.size(); i++) {
+            if (states.get(i).isSolved) {
+                distance[i] = 0;
+            }
+        }
+        for (int i = 0; i < states.size(); i++) {
+            if (distance[i] < 0) {
+                for (int j : edges.get(i)) {
+                    if (distance[j] == 0) {
+                        distance[i] = 1;
+                        queue[tail++] = i;
+                        break;
+                    }
+                }
+            }
+        }
+        while (head < tail) {
+            int i = queue[head++];
+            for (int j : edges.get(i)) {
+                if (distance[j] < 0) {
+                    distance[j] = distance[i] + 1;
+                    queue[tail++] = j;
+                }
+            }
+        }
+
+        int hardest = -1;
+        for (int i = 0; i < states.size(); i++) {
+            if (hardest < 0 || distance[i] > distance[hardest]) {
+                hardest = i;
+            }
+        }
+        if (distance[hardest] <= 0) {
+            return null;
+        }
+        return new Level(states.get(hardest), distance[hardest], states.size());
+    }
+
+    private void place(int cell, boolean[] occupied, int[] remaining, int empties, Deque<Piece> placed,
+                       Consumer<PuzzleMap> sink) {
+        int columns = border.columns();
+        while (cell < occupied.length && occupied[cell]) {
+            cell++;
+        }
+        if (cell == occupied.length) {
+            sink.accept(newPuzzle(placed));
+            return;
+        }
+        int x = cell % columns;
+        int y = cell / columns;
+        if (empties > 0) {
+            occupied[cell] = true;
+            place(cell + 1, occupied, remaining, empties - 1, placed, sink);
+            occupied[cell] = false;
+        }
+        for (int t = 0; t < types.size(); t++) {
+            Piece.Type type = types.get(t);
+            if (remaining[t] > 0 && fits(type, x, y, occupied)) {
+                mark(type, x, y, occupied, true);
+                remaining[t]--;
+                placed.push(new Piece(type, x, y));
+                place(cell + 1, occupied, remaining, empties, placed, sink);
+                placed.pop();
+                remaining[t]++;
+                mark(type, x, y, occupied, false);
+            }
+        }
+    }
+
+    /**
+     * places the pieces, largest first, at random free positions, and starts over when one does not fit anywhere.
+     *
+     * @throws IllegalArgumentException if no attempt out of {@link #PLACEMENT_ATTEMPTS} places every piece.
+     */
+    private PuzzleMap randomPlacement(Random random) {
+        int columns = border.columns();
+        int rows = border.rows();
+        List<int[]> free = new ArrayList<>();
+        for (int attempt = 0; attempt < PLACEMENT_ATTEMPTS; attempt++) {
+            boolean[] occupied = new boolean[columns * rows];
+            Deque<Piece> placed = new ArrayDeque<>();
+            boolean complete = true;
+            for (int t = 0; t < types.size() && complete; t++) {
+                Piece.Type type = types.get(t);
+                for (int n = 0; n < counts[t] && complete; n++) {
+                    free.clear();
+                    for (int y = 0; y + type.height <= rows; y++) {
+                        for (int x = 0; x + type.width <= columns; x++) {
+                            if (fits(type, x, y, occupied)) {
+                                free.add(new int[]{x, y});
+                            }
+                        }
+                    }
+                    if (free.isEmpty()) {
+                        complete = false;
+                    } else {
+                        int[] position = free.get(random.nextInt(free.size()));
+                        mark(type, position[0], position[1], occupied, true);
+                        placed.push(new Piece(type, position[0], position[1]));
+                    }
+                }
+            }
+            if (complete) {
+                return newPuzzle(placed);
+            }
+        }
+        throw new IllegalArgumentException("cannot place the pieces of the template at random in "
+                + PLACEMENT_ATTEMPTS + " attempts.");
+    }
+
+    private boolean fits(Piece.Type type, int x, int y, boolean[] occupied) {
+        int columns = border.columns();
+        if (x + type.width > columns || y + type.height > border.rows()) {
+            return false;
+        }
+        for (int h = 0; h < type.height; h++) {
+            for (int w = 0; w < type.width; w++) {
+                if (occupied[(y + h) * columns + x + w]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void mark(Piece.Type type, int x, int y, boolean[] occupied, boolean value) {
+        int columns = border.columns();
+        for (int h = 0; h < type.height; h++) {
+            for (int w = 0; w < type.width; w++) {
+                occupied[(y + h) * columns + x + w] = value;
+            }
+        }
+    }
+
+    private PuzzleMap newPuzzle(Collection<Piece> placed) {
+        try {
+            return new PuzzleMap("Generated Puzzle", border, new HashSet<>(placed));
+        } catch (BadMoveException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
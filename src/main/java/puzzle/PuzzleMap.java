@@ -1,5 +1,8 @@
 package puzzle;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -15,13 +18,22 @@ public final class PuzzleMap {
 
         static final char EXIT_LABEL = 'Z';
 
+        private static final int LABELS = 128;
+        private static final long ZOBRIST_SEED = 0x9E3779B97F4A7C15L;
+
         private final char[][] chars = new char[Position.values().length][];
         private final List<int[]> exitPositions = new ArrayList<>();
 
         private final int width;
         private final int height;
 
-        Border(char[] top, char[] left, char[] right, char[] bottom) {
+        final StateHashStrategy hashStrategy;
+
+        private final int zobristColumns;
+        private final int zobristRows;
+        private final long[] zobristKeys;
+
+        Border(char[] top, char[] left, char[] right, char[] bottom, StateHashStrategy hashStrategy) {
             if (top.length <= 2) {
                 throw new IllegalArgumentException("border width must be >= 2");
             }
@@ -60,39 +72,147 @@ public final class PuzzleMap {
                     exitPositions.add(new int[]{width - 2, y});
                 }
             }
+
+            this.hashStrategy = hashStrategy;
+
+            // a piece never sticks out of the board by more than its own size, which never exceeds the board
+            zobristColumns = 3 * (width - 2);
+            zobristRows = 3 * (height - 2);
+            if (hashStrategy == StateHashStrategy.ZOBRIST) {
+                SplittableRandom random = new SplittableRandom(ZOBRIST_SEED ^ (31L * width + height));
+                zobristKeys = new long[LABELS * zobristRows * zobristColumns];
+                Arrays.setAll(zobristKeys, i -> random.nextLong());
+            } else {
+                zobristKeys = null;
+            }
+        }
+
+        int cells() {
+            return zobristRows * zobristColumns;
+        }
+
+        int cellIndex(int x, int y) {
+            int column = x + width - 2;
+            int row = y + height - 2;
+            if (column < 0 || column >= zobristColumns || row < 0 || row >= zobristRows) {
+                return -1;
+            }
+            return row * zobristColumns + column;
+        }
+
+        long zobristKey(Piece piece) {
+            char label = piece.type.label;
+            int cell = cellIndex(piece.x, piece.y);
+            if (label >= LABELS || cell < 0) {
+                throw new IllegalArgumentException("piece out of hashing range: " + piece);
+            }
+            return zobristKeys[label * cells() + cell];
+        }
+
+        int columns() {
+            return width - 2;
+        }
+
+        int rows() {
+            return height - 2;
         }
 
         private char[] at(Position position) {
             return chars[position.ordinal()];
         }
 
+        boolean isExitCell(int x, int y) {
+            int columns = columns();
+            int rows = rows();
+            if (x >= 0 && x < columns) {
+                return y == -1 && isExit(x + 1, Position.TOP) || y == rows && isExit(x + 1, Position.BOTTOM);
+            }
+            if (y >= 0 && y < rows) {
+                return x == -1 && isExit(y, Position.LEFT) || x == columns && isExit(y, Position.RIGHT);
+            }
+            return false;
+        }
+
         private boolean isExit(int i, Position position) {
             char[] border = chars[position.ordinal()];
             return i > 0 && i < border.length && border[i] == EXIT_LABEL;
         }
     }
 
+    private static final String SOLVED_SUFFIX = " ** SOLVED **";
+
+    /**
+     * the canonical order of pieces inside a state, so that equal piece sets are equal arrays.
+     */
+    private static final Comparator<Piece> PIECE_ORDER = Comparator.<Piece>comparingInt(piece -> piece.type.label)
+            .thenComparingInt(piece -> piece.y)
+            .thenComparingInt(piece -> piece.x);
+
+    private static final byte[] NOT_COMPUTED = new byte[0];
+
     final boolean isSolved;
+    final long key;
+    final Piece movedFrom;
+    final Piece movedTo;
 
+    /**
+     * only set on states that were not produced by a move; the title of any other state is derived from the move.
+     */
     private final String title;
     private final Border border;
-    private final Set<Piece> pieces;
-    private final Character[][] puzzle;
+    private final Piece[] pieces;
+    /**
+     * the id ({@code index + 1} in {@link #pieces}) of the piece covering every cell, row by row, or 0 if empty.
+     */
+    private final byte[] cells;
     private final Piece main;
+    private final int mainId;
 
+    /**
+     * computed on first use. states are shared between the threads of the parallel solvers, and a thread that reads
+     * the array another thread computed must see its contents, hence {@code volatile}.
+     */
+    private volatile byte[] movable = NOT_COMPUTED;
     private String renderedMap;
 
     PuzzleMap(String title, Border border, Set<Piece> pieces) throws BadMoveException {
+        this(title, border, canonical(pieces), border.hashStrategy.hash(border, pieces), null, null);
+    }
+
+    private PuzzleMap(String title, Border border, Piece[] pieces, long key,
+                      Piece movedFrom, Piece movedTo) throws BadMoveException {
         this.border = border;
-        this.pieces = pieces;
-        validatePieces();
-        main = findMain();
-        puzzle = buildPuzzle();
-        isSolved = checkPuzzleState();
-        this.title = isSolved ? title + " ** SOLVED **" : title;
+        this.movedFrom = movedFrom;
+        this.movedTo = movedTo;
+        this.title = movedFrom == null ? title : null;
+        if (movedFrom == null) {
+            validatePieces(pieces);
+        }
+        int mainIndex = findMain(pieces);
+        main = pieces[mainIndex];
+        byte[] cells = buildCells(pieces);
+        isSolved = checkPuzzleState(cells, mainIndex);
+        mainId = isSolved ? 0 : mainIndex + 1;
+        if (isSolved) {
+            this.pieces = withoutMain(pieces, cells, mainIndex);
+            this.key = border.hashStrategy.remove(key, border.hashStrategy.pieceKey(border, main));
+        } else {
+            this.pieces = pieces;
+            this.key = key;
+        }
+        this.cells = cells;
+    }
+
+    private static Piece[] canonical(Collection<Piece> pieces) {
+        if (pieces.size() > Byte.MAX_VALUE) {
+            throw new IllegalStateException("too many pieces in the puzzle.");
+        }
+        Piece[] result = pieces.toArray(new Piece[0]);
+        Arrays.sort(result, PIECE_ORDER);
+        return result;
     }
 
-    private void validatePieces() {
+    private static void validatePieces(Piece[] pieces) {
         Map<Character, Piece.Type> map = new HashMap<>();
         for (Piece piece : pieces) {
             Piece.Type type = map.get(piece.type.label);
@@ -104,36 +224,39 @@ public final class PuzzleMap {
         }
     }
 
-    private Piece findMain() {
-        Piece p = null;
-        for (Piece piece : pieces) {
-            if (piece.type.isMain) {
-                if (p == null) {
-                    p = piece;
+    private static int findMain(Piece[] pieces) {
+        int p = -1;
+        for (int i = 0; i < pieces.length; i++) {
+            if (pieces[i].type.isMain) {
+                if (p < 0) {
+                    p = i;
                 } else {
                     throw new IllegalStateException("more than one main piece found in the puzzle.");
                 }
             }
         }
-        if (p == null) {
+        if (p < 0) {
             throw new IllegalStateException("main piece is missing from the puzzle.");
         }
         return p;
     }
 
-    private Character[][] buildPuzzle() throws BadMoveException {
-        Character[][] puzzle = new Character[border.height - 2][];
-        Arrays.setAll(puzzle, i -> new Character[border.width - 2]);
-        for (Piece piece : pieces) {
+    private byte[] buildCells(Piece[] pieces) throws BadMoveException {
+        int rows = border.rows();
+        int columns = border.columns();
+        byte[] cells = new byte[rows * columns];
+        for (int i = 0; i < pieces.length; i++) {
+            Piece piece = pieces[i];
+            byte id = (byte) (i + 1);
             for (int h = 0; h < piece.type.height; h++) {
-                int rowIndex = rowIndex(piece, h, puzzle.length);
+                int rowIndex = rowIndex(piece, h, rows);
                 if (rowIndex >= 0) {
-                    Character[] row = puzzle[rowIndex];
                     for (int w = 0; w < piece.type.width; w++) {
-                        int columnIndex = columnIndex(piece, w, puzzle[0].length);
+                        int columnIndex = columnIndex(piece, w, columns);
                         if (columnIndex >= 0) {
-                            if (row[columnIndex] == null) {
-                                row[columnIndex] = piece.type.label;
+                            int cell = rowIndex * columns + columnIndex;
+                            if (cells[cell] == 0) {
+                                cells[cell] = id;
                             } else {
                                 throw BadMoveException.overlap();
                             }
@@ -142,7 +265,7 @@ public final class PuzzleMap {
                 }
             }
         }
-        return puzzle;
+        return cells;
     }
 
     private int rowIndex(Piece piece, int deltaY, int len) throws BadMoveException {
@@ -179,27 +302,52 @@ public final class PuzzleMap {
         throw BadMoveException.hitBorder();
     }
 
-    private boolean checkPuzzleState() {
-        for (Character[] row : puzzle) {
-            for (Character cell : row) {
-                if (cell != null && cell == main.type.label) {
-                    return false;
-                }
+    private static boolean checkPuzzleState(byte[] cells, int mainIndex) {
+        byte id = (byte) (mainIndex + 1);
+        for (byte cell : cells) {
+            if (cell == id) {
+                return false;
             }
         }
-        pieces.remove(main);
         return true;
     }
 
+    /**
+     * drops the main piece of a solved state and renumbers the cells of the pieces that followed it.
+     */
+    private static Piece[] withoutMain(Piece[] pieces, byte[] cells, int mainIndex) {
+        Piece[] result = new Piece[pieces.length - 1];
+        System.arraycopy(pieces, 0, result, 0, mainIndex);
+        System.arraycopy(pieces, mainIndex + 1, result, mainIndex, result.length - mainIndex);
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] > mainIndex + 1) {
+                cells[i]--;
+            }
+        }
+        return result;
+    }
+
+    private String title() {
+        String title = movedFrom == null ? this.title : moveTitle(movedFrom, movedTo);
+        return isSolved ? title + SOLVED_SUFFIX : title;
+    }
+
     private String renderMap() {
+        return title() + "\n\n" + board();
+    }
+
+    /**
+     * @return the rows of the board, borders included, in the form {@link PuzzleParser#parse(String)} reads.
+     */
+    String board() {
+        int columns = border.columns();
         StringBuilder sb = new StringBuilder();
-        sb.append(title).append("\n\n");
         sb.append(border.at(Border.Position.TOP)).append('\n');
-        for (int i = 0; i < puzzle.length; i++) {
+        for (int i = 0; i < border.rows(); i++) {
             sb.append(border.at(Border.Position.LEFT)[i]);
-            Character[] row = puzzle[i];
-            for (Character cell : row) {
-                sb.append(cell == null ? ' ' : cell);
+            for (int j = 0; j < columns; j++) {
+                int id = cells[i * columns + j];
+                sb.append(id == 0 ? ' ' : pieces[id - 1].type.label);
             }
             sb.append(border.at(Border.Position.RIGHT)[i]);
             sb.append('\n');
@@ -208,54 +356,317 @@ public final class PuzzleMap {
         return sb.toString();
     }
 
-    Set<Piece> movablePieces() {
-        Set<Piece> result = new HashSet<>();
-        for (int y = 0; y < puzzle.length; y++) {
-            Character[] row = puzzle[y];
-            for (int x = 0; x < row.length; x++) {
-                Character cell = row[x];
-                if (cell == null) {
-                    findPieceAt(x - 1, y, result);
-                    findPieceAt(x + 1, y, result);
-                    findPieceAt(x, y - 1, result);
-                    findPieceAt(x, y + 1, result);
+    Border border() {
+        return border;
+    }
+
+    List<Piece> pieces() {
+        return Collections.unmodifiableList(Arrays.asList(pieces));
+    }
+
+    public boolean isSolved() {
+        return isSolved;
+    }
+
+    public int columns() {
+        return border.columns();
+    }
+
+    public int rows() {
+        return border.rows();
+    }
+
+    /**
+     * @return the number of pieces on the board. pieces are identified by ids from 1 to this number.
+     */
+    public int pieceCount() {
+        return pieces.length;
+    }
+
+    /**
+     * @return the id of the main piece, or 0 once it has left the board.
+     */
+    public int mainPiece() {
+        return mainId;
+    }
+
+    /**
+     * @return the id of the piece covering the cell ({@code x}, {@code y}), or 0 if the cell is empty or off the board.
+     */
+    public int pieceAt(int x, int y) {
+        if (x < 0 || x >= border.columns() || y < 0 || y >= border.rows()) {
+            return 0;
+        }
+        return cells[y * border.columns() + x];
+    }
+
+    public int pieceX(int id) {
+        return pieces[id - 1].x;
+    }
+
+    public int pieceY(int id) {
+        return pieces[id - 1].y;
+    }
+
+    public int pieceWidth(int id) {
+        return pieces[id - 1].type.width;
+    }
+
+    public int pieceHeight(int id) {
+        return pieces[id - 1].type.height;
+    }
+
+    /**
+     * @return {@code true} if ({@code x}, {@code y}) is a cell just outside the board that the main piece may pass.
+     */
+    public boolean isExit(int x, int y) {
+        return border.isExitCell(x, y);
+    }
+
+    /**
+     * @return the ids of the pieces next to an empty cell or an exit, computed once per state. callers must not
+     * modify the returned array.
+     */
+    byte[] movablePieces() {
+        byte[] result = movable;
+        if (result == NOT_COMPUTED) {
+            int rows = border.rows();
+            int columns = border.columns();
+            boolean[] seen = new boolean[pieces.length + 1];
+            int count = 0;
+            for (int y = 0; y < rows; y++) {
+                for (int x = 0; x < columns; x++) {
+                    if (cells[y * columns + x] == 0) {
+                        count += markPieceAt(x - 1, y, seen) + markPieceAt(x + 1, y, seen) +
+                                markPieceAt(x, y - 1, seen) + markPieceAt(x, y + 1, seen);
+                    }
                 }
             }
-        }
-        for (int[] position : border.exitPositions) {
-            int x = position[0];
-            int y = position[1];
-            findPieceAt(x - 1, y, result);
-            findPieceAt(x + 1, y, result);
-            findPieceAt(x, y - 1, result);
-            findPieceAt(x, y + 1, result);
+            for (int[] position : border.exitPositions) {
+                int x = position[0];
+                int y = position[1];
+                count += markPieceAt(x - 1, y, seen) + markPieceAt(x + 1, y, seen) +
+                        markPieceAt(x, y - 1, seen) + markPieceAt(x, y + 1, seen);
+            }
+            result = new byte[count];
+            for (int id = 1, i = 0; id < seen.length; id++) {
+                if (seen[id]) {
+                    result[i++] = (byte) id;
+                }
+            }
+            movable = result;
         }
         return result;
     }
 
-    private void findPieceAt(int x, int y, Set<Piece> result) {
-        if (y < 0 || y >= puzzle.length) return;
-        if (x < 0 || x >= puzzle[0].length) return;
+    private int markPieceAt(int x, int y, boolean[] seen) {
+        if (y < 0 || y >= border.rows()) return 0;
+        if (x < 0 || x >= border.columns()) return 0;
 
-        Character label = puzzle[y][x];
-        if (label == null) return;
+        int id = cells[y * border.columns() + x];
+        if (id == 0 || seen[id]) return 0;
 
-        for (Piece piece : pieces) {
-            if (piece.type.label == label) {
-                for (int w = 0; w < piece.type.width; w++) {
-                    if (piece.x + w == x) {
-                        for (int h = 0; h < piece.type.height; h++) {
-                            if (piece.y + h == y) {
-                                result.add(piece);
-                                return;
-                            }
+        seen[id] = true;
+        return 1;
+    }
+
+    List<PuzzleMap> successors(MoveSemantics semantics) {
+        List<PuzzleMap> result = new ArrayList<>();
+        for (byte id : movablePieces()) {
+            moves(id, semantics, result);
+        }
+        return result;
+    }
+
+    /**
+     * collects every state reachable by moving only the piece {@code id} once under the given semantics, using a
+     * single flood fill over the empty cells around the piece.
+     */
+    void moves(int id, MoveSemantics semantics, List<PuzzleMap> result) {
+        Piece piece = pieces[id - 1];
+        boolean[] visited = new boolean[border.cells()];
+        visited[border.cellIndex(piece.x, piece.y)] = true;
+        Deque<Piece> queue = new ArrayDeque<>();
+        Deque<MoveStrategy> directions = new ArrayDeque<>();
+        queue.add(piece);
+        directions.add(MoveStrategy.UP);
+        while (queue.size() > 0) {
+            Piece current = queue.poll();
+            MoveStrategy direction = directions.poll();
+            for (MoveStrategy strategy : MoveStrategy.values()) {
+                if (current != piece && !semantics.turns && strategy != direction) {
+                    continue;
+                }
+                Piece next = strategy.move(current);
+                int cell = border.cellIndex(next.x, next.y);
+                if (cell < 0 || visited[cell] || !isFree(next, id)) {
+                    continue;
+                }
+                visited[cell] = true;
+                PuzzleMap successor;
+                try {
+                    successor = moveTo(id, next);
+                } catch (BadMoveException e) {
+                    throw new IllegalStateException(e);
+                }
+                result.add(successor);
+                if (semantics.multiStep && !successor.isSolved) {
+                    queue.add(next);
+                    directions.add(strategy);
+                }
+            }
+        }
+    }
+
+    /**
+     * a cheap, sound deadlock test: finds the pieces that can never move again (every cell they could move into is
+     * a wall or belongs to another such piece) and checks whether the main piece can still reach an exit around them.
+     */
+    boolean isMainPieceTrapped() {
+        if (isSolved) {
+            return false;
+        }
+        boolean[] frozen = new boolean[pieces.length + 1];
+        Arrays.fill(frozen, 1, frozen.length, true);
+        frozen[mainId] = false;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int id = 1; id < frozen.length; id++) {
+                if (frozen[id]) {
+                    for (MoveStrategy strategy : MoveStrategy.values()) {
+                        if (canEverMove(strategy.move(pieces[id - 1]), id, frozen)) {
+                            frozen[id] = false;
+                            changed = true;
+                            break;
                         }
                     }
                 }
             }
         }
 
-        throw new IllegalStateException();
+        boolean[] blocked = new boolean[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            blocked[i] = frozen[cells[i]];
+        }
+        boolean[] visited = new boolean[border.cells()];
+        visited[border.cellIndex(main.x, main.y)] = true;
+        Deque<Piece> queue = new ArrayDeque<>();
+        queue.add(main);
+        while (queue.size() > 0) {
+            Piece current = queue.poll();
+            for (MoveStrategy strategy : MoveStrategy.values()) {
+                Piece next = strategy.move(current);
+                int cell = border.cellIndex(next.x, next.y);
+                if (cell < 0 || visited[cell] || !fits(next, blocked)) {
+                    continue;
+                }
+                if (isOutside(next)) {
+                    return false;
+                }
+                visited[cell] = true;
+                queue.add(next);
+            }
+        }
+        return true;
+    }
+
+    private boolean canEverMove(Piece candidate, int self, boolean[] frozen) {
+        int rows = border.rows();
+        int columns = border.columns();
+        for (int h = 0; h < candidate.type.height; h++) {
+            for (int w = 0; w < candidate.type.width; w++) {
+                int x = candidate.x + w;
+                int y = candidate.y + h;
+                if (x < 0 || x >= columns || y < 0 || y >= rows) {
+                    return false;
+                }
+                int owner = cells[y * columns + x];
+                if (owner != self && frozen[owner]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean fits(Piece candidate, boolean[] blocked) {
+        int rows = border.rows();
+        int columns = border.columns();
+        for (int h = 0; h < candidate.type.height; h++) {
+            int y = candidate.y + h;
+            if (y < 0 || y >= rows) {
+                if (!canLeave(candidate, y < 0 ? Border.Position.TOP : Border.Position.BOTTOM)) {
+                    return false;
+                }
+                continue;
+            }
+            for (int w = 0; w < candidate.type.width; w++) {
+                int x = candidate.x + w;
+                if (x < 0 || x >= columns) {
+                    if (!canLeave(candidate, x < 0 ? Border.Position.LEFT : Border.Position.RIGHT)) {
+                        return false;
+                    }
+                    continue;
+                }
+                if (blocked[y * columns + x]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean isOutside(Piece piece) {
+        return piece.x + piece.type.width <= 0 || piece.x >= border.columns() ||
+                piece.y + piece.type.height <= 0 || piece.y >= border.rows();
+    }
+
+    private boolean isFree(Piece candidate, int self) {
+        int rows = border.rows();
+        int columns = border.columns();
+        for (int h = 0; h < candidate.type.height; h++) {
+            int y = candidate.y + h;
+            if (y < 0 || y >= rows) {
+                if (!canLeave(candidate, y < 0 ? Border.Position.TOP : Border.Position.BOTTOM)) {
+                    return false;
+                }
+                continue;
+            }
+            for (int w = 0; w < candidate.type.width; w++) {
+                int x = candidate.x + w;
+                if (x < 0 || x >= columns) {
+                    if (!canLeave(candidate, x < 0 ? Border.Position.LEFT : Border.Position.RIGHT)) {
+                        return false;
+                    }
+                    continue;
+                }
+                int cell = cells[y * columns + x];
+                if (cell != 0 && cell != self) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean canLeave(Piece piece, Border.Position position) {
+        if (!piece.type.isMain) {
+            return false;
+        }
+        boolean horizontal = position == Border.Position.TOP || position == Border.Position.BOTTOM;
+        int size = horizontal ? piece.type.width : piece.type.height;
+        for (int i = 0; i < size; i++) {
+            if (!(horizontal ? border.isExit(piece.x + i + 1, position) : border.isExit(piece.y + i, position))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOf(Piece piece) {
+        int i = Arrays.binarySearch(pieces, piece, PIECE_ORDER);
+        return i >= 0 && pieces[i].equals(piece) ? i : -1;
     }
 
     double estimatedDistanceToGoal(HeuristicAlgorithm algorithm) {
@@ -268,24 +679,148 @@ public final class PuzzleMap {
 
     PuzzleMap move(Piece piece, MoveStrategy strategy) throws BadMoveException {
         Piece next = strategy.move(piece);
-        if (!pieces.contains(piece) || !piece.type.equals(next.type)) {
+        int i = indexOf(piece);
+        if (i < 0 || !piece.type.equals(next.type)) {
             throw new IllegalStateException("unexpected piece move.");
         }
-        if (pieces.contains(next)) {
+        if (indexOf(next) >= 0) {
             throw BadMoveException.overlap();
         }
+        return moveTo(i + 1, next);
+    }
+
+    private PuzzleMap moveTo(int id, Piece next) throws BadMoveException {
+        Piece piece = pieces[id - 1];
+        Piece[] newPieces = pieces.clone();
+        // only pieces sharing a label can swap places in the canonical order
+        int i = id - 1;
+        while (i > 0 && PIECE_ORDER.compare(newPieces[i - 1], next) > 0) {
+            newPieces[i] = newPieces[i - 1];
+            i--;
+        }
+        while (i < newPieces.length - 1 && PIECE_ORDER.compare(newPieces[i + 1], next) < 0) {
+            newPieces[i] = newPieces[i + 1];
+            i++;
+        }
+        newPieces[i] = next;
+        return new PuzzleMap(null, border, newPieces, border.hashStrategy.move(border, key, piece, next), piece, next);
+    }
+
+    private static String moveTitle(Piece piece, Piece next) {
         String fromPosition = "[" + piece.x + ", " + piece.y + "]";
         String toPosition = "[" + next.x + ", " + next.y + "]";
-        String title = piece.type + " moved from " + fromPosition + " to " + toPosition;
-        Set<Piece> newSet = new HashSet<>(pieces);
-        newSet.remove(piece);
-        newSet.add(next);
-        return new PuzzleMap(title, border, newSet);
+        return piece.type + " moved from " + fromPosition + " to " + toPosition;
+    }
+
+    Map<Character, Piece.Type> pieceTypes() {
+        Map<Character, Piece.Type> types = new HashMap<>();
+        types.put(main.type.label, main.type);
+        for (Piece piece : pieces) {
+            types.put(piece.type.label, piece.type);
+        }
+        return types;
+    }
+
+    /**
+     * a rough estimate of the heap retained by this state alone, assuming a 64-bit JVM with compressed oops. pieces
+     * that did not move are shared with the parent state and are not counted.
+     */
+    long estimatedBytes() {
+        long bytes = align(12 + 1 + 8 + 9 * 4);
+        bytes += align(16 + 4L * pieces.length) + 24;
+        bytes += align(16 + cells.length);
+        if (movable != NOT_COMPUTED) {
+            bytes += align(16 + movable.length);
+        }
+        if (title != null) {
+            bytes += 24 + align(16 + title.length());
+        }
+        return bytes;
+    }
+
+    /**
+     * a 64-bit hash of the state that is strong whatever the {@link StateHashStrategy}: the key under Zobrist
+     * hashing, otherwise mixed from the pieces. tables that do not keep the states themselves compare this instead.
+     */
+    long fingerprint() {
+        if (border.hashStrategy == StateHashStrategy.ZOBRIST) {
+            return key;
+        }
+        long hash = pieces.length;
+        for (Piece piece : pieces) {
+            hash = mix(hash * 31 + ((long) piece.type.label << 16 | (piece.x & 0xFF) << 8 | piece.y & 0xFF));
+        }
+        return hash;
+    }
+
+    private static long mix(long hash) {
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeShort(isSolved ? pieces.length + 1 : pieces.length);
+        writePiece(out, main);
+        for (Piece piece : pieces) {
+            if (piece != main) {
+                writePiece(out, piece);
+            }
+        }
+        out.writeBoolean(movedFrom != null);
+        if (movedFrom == null) {
+            out.writeUTF(title);
+        } else {
+            writePiece(out, movedFrom);
+            writePiece(out, movedTo);
+        }
+    }
+
+    static PuzzleMap readFrom(DataInput in, Border border, Map<Character, Piece.Type> types) throws IOException {
+        int n = in.readUnsignedShort();
+        Set<Piece> pieces = new HashSet<>();
+        for (int i = 0; i < n; i++) {
+            pieces.add(readPiece(in, types));
+        }
+        String title = null;
+        Piece movedFrom = null;
+        Piece movedTo = null;
+        if (in.readBoolean()) {
+            movedFrom = readPiece(in, types);
+            movedTo = readPiece(in, types);
+        } else {
+            title = in.readUTF();
+        }
+        try {
+            return new PuzzleMap(title, border, canonical(pieces), border.hashStrategy.hash(border, pieces),
+                    movedFrom, movedTo);
+        } catch (BadMoveException | IllegalStateException e) {
+            throw new IOException("corrupted puzzle state.", e);
+        }
+    }
+
+    private static void writePiece(DataOutput out, Piece piece) throws IOException {
+        out.writeChar(piece.type.label);
+        out.writeByte(piece.x);
+        out.writeByte(piece.y);
+    }
+
+    private static Piece readPiece(DataInput in, Map<Character, Piece.Type> types) throws IOException {
+        char label = in.readChar();
+        Piece.Type type = types.get(label);
+        if (type == null) {
+            throw new IOException("unknown piece label: " + label);
+        }
+        return new Piece(type, in.readByte(), in.readByte());
     }
 
     @Override
     public int hashCode() {
-        return pieces.hashCode();
+        return (int) (key ^ (key >>> 32));
     }
 
     @Override
@@ -293,7 +828,7 @@ public final class PuzzleMap {
         if (obj == this) return true;
         if (!(obj instanceof PuzzleMap)) return false;
         PuzzleMap that = (PuzzleMap) obj;
-        return pieces.equals(that.pieces);
+        return key == that.key && Arrays.equals(pieces, that.pieces);
     }
 
     @Override
@@ -31,7 +31,25 @@ public class PuzzleParser {
     }
 
     public static PuzzleMap parse(char[][] map) throws ParseException {
-        PuzzleMap.Border border = parseBorder(map);
+        return parse(map, StateHashStrategy.ZOBRIST);
+    }
+
+    public static PuzzleMap parse(String map) throws ParseException {
+        return parse(map, StateHashStrategy.ZOBRIST);
+    }
+
+    public static PuzzleMap parse(String map, StateHashStrategy hashStrategy) throws ParseException {
+        String[] lines = map.trim().split("\\R");
+        char[][] chars = new char[lines.length][];
+        for (int i = 0; i < lines.length; i++) {
+            chars[i] = lines[i].toCharArray();
+        }
+        return parse(chars, hashStrategy);
+    }
+
+    public static PuzzleMap parse(char[][] map, StateHashStrategy hashStrategy) throws ParseException {
+        checkShape(map);
+        PuzzleMap.Border border = parseBorder(map, hashStrategy);
         Set<String> seen = new HashSet<>();
         Set<Piece> pieces = new HashSet<>();
         for (int y = 1; y < map.length - 1; y++) {
@@ -56,6 +74,10 @@ public class PuzzleParser {
                 }
             }
         }
+        long mains = pieces.stream().filter(piece -> piece.type.isMain).count();
+        if (mains != 1) {
+            throw new ParseException("a puzzle needs exactly one main piece, found " + mains + ".", 0);
+        }
         try {
             return new PuzzleMap("Initial Puzzle", border, pieces);
         } catch (BadMoveException e) {
@@ -63,7 +85,27 @@ public class PuzzleParser {
         }
     }
 
-    private static PuzzleMap.Border parseBorder(char[][] map) {
+    /**
+     * the rest of the parser indexes rows freely, so a map must be a rectangle with a border around at least one
+     * cell.
+     */
+    private static void checkShape(char[][] map) throws ParseException {
+        if (map.length < 3) {
+            throw new ParseException("a puzzle needs at least 3 rows.", 0);
+        }
+        int columns = map[0].length;
+        if (columns < 3) {
+            throw new ParseException("a puzzle needs at least 3 columns.", 0);
+        }
+        for (int y = 1; y < map.length; y++) {
+            if (map[y].length != columns) {
+                throw new ParseException("row " + y + " has " + map[y].length + " columns instead of " + columns
+                        + ".", y);
+            }
+        }
+    }
+
+    private static PuzzleMap.Border parseBorder(char[][] map, StateHashStrategy hashStrategy) {
         char[] top = map[0];
         char[] bottom = map[map.length - 1];
         char[] left = new char[map.length - 2];
@@ -75,6 +117,6 @@ public class PuzzleParser {
             right[x] = row[row.length - 1];
             ++x;
         }
-        return new PuzzleMap.Border(top, left, right, bottom);
+        return new PuzzleMap.Border(top, left, right, bottom, hashStrategy);
     }
 }
@@ -0,0 +1,20 @@
+package puzzle;
+
+/**
+ * @author ahmad
+ */
+public final class SearchBudgetExceededException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final SearchStatistics statistics;
+
+    SearchBudgetExceededException(long budget, SearchStatistics statistics) {
+        super("search exceeded its memory budget of " + budget + " bytes: " + statistics);
+        this.statistics = statistics;
+    }
+
+    public SearchStatistics statistics() {
+        return statistics;
+    }
+}
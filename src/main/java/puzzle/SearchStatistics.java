@@ -0,0 +1,50 @@
+package puzzle;
+
+import java.io.Serializable;
+
+/**
+ * What a solve had done by the time it stopped.
+ *
+ * @author ahmad
+ */
+public final class SearchStatistics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public final String phase;
+    public final long expandedNodes;
+    public final long storedNodes;
+    public final long estimatedBytes;
+    public final long spilledNodes;
+    public final long spilledBytes;
+    public final int spillRuns;
+    public final double bestHeuristic;
+    public final int maxDepth;
+    public final long elapsedNanos;
+
+    SearchStatistics(String phase, long expandedNodes, long storedNodes, long estimatedBytes, long spilledNodes,
+                     long spilledBytes, int spillRuns, double bestHeuristic, int maxDepth, long elapsedNanos) {
+        this.phase = phase;
+        this.expandedNodes = expandedNodes;
+        this.storedNodes = storedNodes;
+        this.estimatedBytes = estimatedBytes;
+        this.spilledNodes = spilledNodes;
+        this.spilledBytes = spilledBytes;
+        this.spillRuns = spillRuns;
+        this.bestHeuristic = bestHeuristic;
+        this.maxDepth = maxDepth;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "phase = " + phase +
+                ", expanded = " + expandedNodes +
+                ", stored = " + storedNodes +
+                ", bytes = " + estimatedBytes +
+                ", spilled = " + spilledNodes + " nodes / " + spilledBytes + " bytes in " + spillRuns + " runs" +
+                ", best h = " + bestHeuristic +
+                ", max depth = " + maxDepth +
+                ", elapsed = " + elapsedNanos / 1_000_000 + " ms";
+    }
+}
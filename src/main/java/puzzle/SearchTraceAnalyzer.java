@@ -0,0 +1,222 @@
+package puzzle;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Reads a trace written by {@link SearchTracer#dump} and prints
+ * <ul>
+ * <li>how the priorities ({@code f}) of the expanded states are distributed in every slice of the traced time, which
+ * shows whether the heuristic keeps the search on a narrow front or lets it spread;</li>
+ * <li>the re-expansion rate, the share of expansions of a state that was expanded before, along with how many states
+ * were reopened and how many stale queue entries were dropped per expansion, which shows the queue churn;</li>
+ * <li>for every thread, the time it spent expanding states and the time it did not, out of the whole traced span.</li>
+ * </ul>
+ * {@code java puzzle.SearchTraceAnalyzer <trace file> [time slices] [f bins]}
+ *
+ * @author ahmad
+ */
+public final class SearchTraceAnalyzer {
+
+    /**
+     * the events of one thread, oldest first.
+     */
+    static final class ThreadTrace {
+
+        final String name;
+        final long written;
+        final byte[] kinds;
+        final long[] keys;
+        final double[] f;
+        final long[] starts;
+        final long[] durations;
+
+        ThreadTrace(String name, long written, int count) {
+            this.name = name;
+            this.written = written;
+            kinds = new byte[count];
+            keys = new long[count];
+            f = new double[count];
+            starts = new long[count];
+            durations = new long[count];
+        }
+    }
+
+    private SearchTraceAnalyzer() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: java puzzle.SearchTraceAnalyzer <trace file> [time slices] [f bins]");
+            System.exit(2);
+        }
+        int slices = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int bins = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        analyze(Paths.get(args[0]), slices, bins, System.out);
+    }
+
+    static void analyze(Path file, int slices, int bins, PrintStream out) throws IOException {
+        List<ThreadTrace> threads = read(file);
+
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        long events = 0;
+        long dropped = 0;
+        long[] kinds = new long[SearchTracer.KIND_NAMES.length];
+        double minF = Double.POSITIVE_INFINITY;
+        double maxF = Double.NEGATIVE_INFINITY;
+        for (ThreadTrace thread : threads) {
+            events += thread.kinds.length;
+            dropped += thread.written - thread.kinds.length;
+            for (int i = 0; i < thread.kinds.length; i++) {
+                first = Math.min(first, thread.starts[i]);
+                last = Math.max(last, thread.starts[i] + thread.durations[i]);
+                kinds[thread.kinds[i]]++;
+                if (thread.kinds[i] == SearchTracer.EXPAND && Double.isFinite(thread.f[i])) {
+                    minF = Math.min(minF, thread.f[i]);
+                    maxF = Math.max(maxF, thread.f[i]);
+                }
+            }
+        }
+        out.println("trace: " + file);
+        if (events == 0) {
+            out.println("no events.");
+            return;
+        }
+        long span = Math.max(1, last - first);
+        out.printf("threads = %d, events = %d (%d dropped), span = %.1f ms%n", threads.size(), events, dropped,
+                span / 1e6);
+        StringBuilder counts = new StringBuilder("events:");
+        for (int k = 0; k < kinds.length; k++) {
+            counts.append(' ').append(SearchTracer.KIND_NAMES[k]).append(" = ").append(kinds[k]);
+        }
+        out.println(counts);
+        out.println();
+
+        fHistogram(threads, first, span, slices, bins, minF, maxF, out);
+        out.println();
+        reexpansions(threads, kinds, out);
+        out.println();
+        idleTime(threads, span, out);
+    }
+
+    private static void fHistogram(List<ThreadTrace> threads, long first, long span, int slices, int bins,
+                                   double minF, double maxF, PrintStream out) {
+        if (minF > maxF) {
+            out.println("no expansions with a priority.");
+            return;
+        }
+        double width = maxF > minF ? (maxF - minF) / bins : 1;
+        long[][] histogram = new long[slices][bins];
+        for (ThreadTrace thread : threads) {
+            for (int i = 0; i < thread.kinds.length; i++) {
+                if (thread.kinds[i] != SearchTracer.EXPAND || !Double.isFinite(thread.f[i])) {
+                    continue;
+                }
+                int slice = (int) Math.min(slices - 1, (thread.starts[i] - first) * slices / span);
+                int bin = (int) Math.min(bins - 1, (thread.f[i] - minF) / width);
+                histogram[slice][bin]++;
+            }
+        }
+        out.println("expansions by priority (f) over time:");
+        StringBuilder header = new StringBuilder(String.format("%10s |", "from ms"));
+        for (int b = 0; b < bins; b++) {
+            header.append(String.format(" %9s", String.format("f>=%.4g", minF + b * width)));
+        }
+        out.println(header);
+        for (int s = 0; s < slices; s++) {
+            StringBuilder row = new StringBuilder(String.format("%10.1f |", s * span / (double) slices / 1e6));
+            for (int b = 0; b < bins; b++) {
+                row.append(String.format(" %9d", histogram[s][b]));
+            }
+            out.println(row);
+        }
+    }
+
+    private static void reexpansions(List<ThreadTrace> threads, long[] kinds, PrintStream out) {
+        int expansions = (int) kinds[SearchTracer.EXPAND];
+        long[] starts = new long[expansions];
+        long[] keys = new long[expansions];
+        Integer[] order = new Integer[expansions];
+        int n = 0;
+        for (ThreadTrace thread : threads) {
+            for (int i = 0; i < thread.kinds.length; i++) {
+                if (thread.kinds[i] == SearchTracer.EXPAND) {
+                    starts[n] = thread.starts[i];
+                    keys[n] = thread.keys[i];
+                    order[n] = n;
+                    n++;
+                }
+            }
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> starts[i]));
+        Set<Long> expanded = new HashSet<>();
+        long again = 0;
+        for (int i : order) {
+            if (!expanded.add(keys[i])) {
+                again++;
+            }
+        }
+        double perExpansion = Math.max(1, expansions);
+        out.printf("re-expansions: %d of %d expansions (%.2f%%), %d distinct states%n", again, expansions,
+                100.0 * again / perExpansion, expanded.size());
+        out.printf("queue churn: %.3f reopened states and %.3f stale entries per expansion%n",
+                kinds[SearchTracer.REOPEN] / perExpansion, kinds[SearchTracer.STALE] / perExpansion);
+    }
+
+    private static void idleTime(List<ThreadTrace> threads, long span, PrintStream out) {
+        out.println("time per thread over the traced span:");
+        out.printf("%-32s %10s %10s %10s %7s%n", "thread", "expansions", "busy ms", "idle ms", "idle %");
+        for (ThreadTrace thread : threads) {
+            long expansions = 0;
+            long busy = 0;
+            for (int i = 0; i < thread.kinds.length; i++) {
+                if (thread.kinds[i] == SearchTracer.EXPAND) {
+                    expansions++;
+                    busy += thread.durations[i];
+                }
+            }
+            long idle = Math.max(0, span - busy);
+            out.printf("%-32s %10d %10.1f %10.1f %7.1f%n", thread.name, expansions, busy / 1e6, idle / 1e6,
+                    100.0 * idle / span);
+        }
+    }
+
+    static List<ThreadTrace> read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != SearchTracer.MAGIC) {
+                throw new IOException("not a search trace: " + file);
+            }
+            int version = in.readInt();
+            if (version != SearchTracer.VERSION) {
+                throw new IOException("unsupported trace version: " + version);
+            }
+            int count = in.readInt();
+            List<ThreadTrace> threads = new ArrayList<>(count);
+            for (int t = 0; t < count; t++) {
+                String name = in.readUTF();
+                in.readLong(); // the thread id
+                long written = in.readLong();
+                ThreadTrace thread = new ThreadTrace(name, written, in.readInt());
+                for (int i = 0; i < thread.kinds.length; i++) {
+                    byte kind = in.readByte();
+                    if (kind < 0 || kind >= SearchTracer.KIND_NAMES.length) {
+                        throw new IOException("unknown event kind: " + kind);
+                    }
+                    thread.kinds[i] = kind;
+                    thread.keys[i] = in.readLong();
+                    in.readInt(); // g
+                    in.readDouble(); // h
+                    thread.f[i] = in.readDouble();
+                    thread.starts[i] = in.readLong();
+                    thread.durations[i] = in.readLong();
+                }
+                threads.add(thread);
+            }
+            return threads;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package puzzle;
+
+import jdk.jfr.*;
+
+/**
+ * The flight recorder view of an event recorded by a {@link SearchTracer}. Enable {@code puzzle.SearchTrace} in a
+ * recording to get one per expansion, reopened state and stale queue entry.
+ *
+ * @author ahmad
+ */
+@Name("puzzle.SearchTrace")
+@Label("Search Trace")
+@Category({"Puzzle", "Search"})
+@Description("An expansion, reopened state or stale queue entry of a traced search")
+@StackTrace(false)
+final class SearchTraceEvent extends Event {
+
+    @Label("Kind")
+    String kind;
+
+    @Label("State Key")
+    long key;
+
+    @Label("Moves So Far")
+    int g;
+
+    @Label("Heuristic")
+    double h;
+
+    @Label("Priority")
+    double f;
+
+    @Label("Time Taken")
+    @Timespan(Timespan.NANOSECONDS)
+    long timeTaken;
+}
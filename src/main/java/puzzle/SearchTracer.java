@@ -0,0 +1,238 @@
+package puzzle;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records what a search does, event by event, for {@link SearchTraceAnalyzer} and for JDK Flight Recorder. Tracing
+ * is enabled with {@link SolverOptions#withTracer}; solvers without a tracer only pay for a {@code null} check.
+ * <p>
+ * Every thread that records an event gets its own ring buffer of preallocated primitive arrays the first time it
+ * does, so recording takes no lock and allocates nothing beyond the flight recorder event, which the JIT usually
+ * scalarizes and which is only committed while a recording with {@code puzzle.SearchTrace} enabled is running. A full
+ * buffer overwrites its oldest events, and a buffer outlives its thread, so that the events of the pools the parallel
+ * solvers start for every solve can still be dumped after it.
+ * <p>
+ * Since those pools, and a server serving every request on a new thread, keep bringing new threads, the number of
+ * buffers is capped: once it is reached, a new thread takes over the buffer of a thread that has ended, dropping its
+ * events, and if every owner is still alive the new thread records nothing. Either way the lost events are counted by
+ * {@link #droppedEvents}. The events are:
+ * <ul>
+ * <li>{@link #EXPAND}: a state was expanded, with how long its expansion took.</li>
+ * <li>{@link #REOPEN}: an already generated state was reached by a cheaper path and queued again.</li>
+ * <li>{@link #STALE}: a queued entry was dropped because a cheaper path to its state had been found since.</li>
+ * </ul>
+ * The A* and breadth-first solvers record events; the budgeted, fork/join and distributed solvers do not.
+ * {@link #dump} must not run while a traced solve is still running.
+ *
+ * @author ahmad
+ */
+public final class SearchTracer {
+
+    public static final byte EXPAND = 0;
+    public static final byte REOPEN = 1;
+    public static final byte STALE = 2;
+
+    static final int MAGIC = 0x505a5452; // "PZTR"
+    static final int VERSION = 1;
+
+    static final String[] KIND_NAMES = {"expand", "reopen", "stale"};
+
+    /**
+     * the events of one thread, oldest first once {@link #written} exceeds the capacity.
+     */
+    static final class Buffer {
+
+        final int mask;
+        final byte[] kinds;
+        final long[] keys;
+        final int[] g;
+        final double[] h;
+        final double[] f;
+        final long[] starts;
+        final long[] durations;
+
+        Thread owner;
+        /**
+         * only the owner advances it, but {@link #clear} resets it and {@link #dump} reads it from other threads; the
+         * volatile write after the arrays also publishes the event to them.
+         */
+        volatile long written;
+
+        Buffer(int capacity) {
+            mask = capacity - 1;
+            kinds = new byte[capacity];
+            keys = new long[capacity];
+            g = new int[capacity];
+            h = new double[capacity];
+            f = new double[capacity];
+            starts = new long[capacity];
+            durations = new long[capacity];
+        }
+
+        void record(byte kind, long key, int g, double h, double f, long start, long end) {
+            long w = written;
+            int i = (int) w & mask;
+            kinds[i] = kind;
+            keys[i] = key;
+            this.g[i] = g;
+            this.h[i] = h;
+            this.f[i] = f;
+            starts[i] = start;
+            durations[i] = end - start;
+            written = w + 1;
+        }
+    }
+
+    private final int capacity;
+    private final int maxThreads;
+    private final List<Buffer> buffers = new CopyOnWriteArrayList<>();
+    /**
+     * buffers of ended threads that {@link #clear} took back, guarded by {@code this}.
+     */
+    private final Queue<Buffer> spare = new ArrayDeque<>();
+    private final AtomicLong lostEvents = new AtomicLong();
+    private final ThreadLocal<Buffer> local = ThreadLocal.withInitial(this::register);
+
+    /**
+     * @param eventsPerThread the capacity of every thread's ring buffer, rounded up to a power of two. at most twice as
+     *                        many buffers as there are processors, and at least 8, are allocated.
+     */
+    public SearchTracer(int eventsPerThread) {
+        this(eventsPerThread, Math.max(8, 2 * Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param eventsPerThread the capacity of every thread's ring buffer, rounded up to a power of two.
+     * @param maxThreads      the number of buffers, and so of threads recording at once, never exceeded.
+     */
+    public SearchTracer(int eventsPerThread, int maxThreads) {
+        if (eventsPerThread < 1 || eventsPerThread > 1 << 30) {
+            throw new IllegalArgumentException("events per thread must be in [1, 2^30]: " + eventsPerThread);
+        }
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("max threads must be positive: " + maxThreads);
+        }
+        capacity = eventsPerThread == 1 ? 1 : Integer.highestOneBit(eventsPerThread - 1) << 1;
+        this.maxThreads = maxThreads;
+    }
+
+    /**
+     * @return a buffer for the current thread, or {@code null} if all of them belong to threads that are still alive.
+     */
+    private synchronized Buffer register() {
+        Buffer buffer = spare.poll();
+        if (buffer == null && buffers.size() < maxThreads) {
+            buffer = new Buffer(capacity);
+        }
+        if (buffer == null) {
+            for (Buffer candidate : buffers) {
+                if (!candidate.owner.isAlive()) {
+                    buffers.remove(candidate);
+                    lostEvents.addAndGet(Math.min(candidate.written, capacity));
+                    buffer = candidate;
+                    break;
+                }
+            }
+        }
+        if (buffer == null) {
+            return null;
+        }
+        buffer.owner = Thread.currentThread();
+        buffer.written = 0;
+        buffers.add(buffer);
+        return buffer;
+    }
+
+    /**
+     * records an event that started at {@code start}, a {@link System#nanoTime()}, and ends now, or one that takes no
+     * time if {@code start} is 0. {@code h} is {@code NaN} for solvers that do not consult the heuristic.
+     */
+    void record(byte kind, long key, int g, double h, double f, long start) {
+        long end = System.nanoTime();
+        if (start == 0) {
+            start = end;
+        }
+        Buffer buffer = local.get();
+        if (buffer == null) {
+            lostEvents.incrementAndGet();
+        } else {
+            buffer.record(kind, key, g, h, f, start, end);
+        }
+        SearchTraceEvent event = new SearchTraceEvent();
+        if (event.shouldCommit()) {
+            event.kind = KIND_NAMES[kind];
+            event.key = key;
+            event.g = g;
+            event.h = h;
+            event.f = f;
+            event.timeTaken = end - start;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return the number of events that were overwritten before they could be dumped, or never recorded because every
+     * buffer was taken.
+     */
+    public long droppedEvents() {
+        long dropped = lostEvents.get();
+        for (Buffer buffer : buffers) {
+            dropped += Math.max(0, buffer.written - capacity);
+        }
+        return dropped;
+    }
+
+    /**
+     * forgets every recorded event. the buffers of threads that have ended, such as the workers of the pools the
+     * parallel solvers start for every solve, are kept for threads that record later. like {@link #dump} it must not
+     * run while a traced solve is still running.
+     */
+    public synchronized void clear() {
+        lostEvents.set(0);
+        for (Buffer buffer : buffers) {
+            buffer.written = 0;
+            if (!buffer.owner.isAlive()) {
+                buffers.remove(buffer);
+                spare.add(buffer);
+            }
+        }
+    }
+
+    /**
+     * writes the events of every thread to {@code file} in the format {@link SearchTraceAnalyzer} reads.
+     */
+    public void dump(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            List<Buffer> snapshot = new ArrayList<>(buffers);
+            snapshot.removeIf(buffer -> buffer.written == 0);
+            out.writeInt(snapshot.size());
+            for (Buffer buffer : snapshot) {
+                int count = (int) Math.min(buffer.written, capacity);
+                out.writeUTF(buffer.owner.getName());
+                out.writeLong(buffer.owner.threadId());
+                out.writeLong(buffer.written);
+                out.writeInt(count);
+                for (long e = buffer.written - count; e < buffer.written; e++) {
+                    int i = (int) e & buffer.mask;
+                    out.writeByte(buffer.kinds[i]);
+                    out.writeLong(buffer.keys[i]);
+                    out.writeInt(buffer.g[i]);
+                    out.writeDouble(buffer.h[i]);
+                    out.writeDouble(buffer.f[i]);
+                    out.writeLong(buffer.starts[i]);
+                    out.writeLong(buffer.durations[i]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package puzzle;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * A local HTTP solve server. Every request is handled on its own virtual thread, while the CPU-heavy search runs on a
+ * bounded pool of platform threads shared by all requests.
+ * <p>
+ * {@code POST /solve?algorithm=MANHATTAN&deadline=1000} with the puzzle rows as the request body answers (the
+ * algorithm names a {@link HeuristicAlgorithm} or a {@link StandardHeuristic})
+ * <ul>
+ * <li>{@code 200} with the number of moves followed by every step of the solution,</li>
+ * <li>{@code 404} if the puzzle has no solution,</li>
+ * <li>{@code 500} if the server or the solver fails,</li>
+ * <li>{@code 400} if the puzzle cannot be parsed or the algorithm or deadline is malformed,</li>
+ * <li>{@code 503} if too many solves are already in flight,</li>
+ * <li>{@code 504} if the solve did not finish before its deadline.</li>
+ * </ul>
+ * A solve past its deadline is cancelled by interrupting its thread, so a solver that does not
+ * {@linkplain HeuristicPuzzleSolver#stopsWhenInterrupted() stop when interrupted}, such as the fork/join solver, would
+ * keep a search thread busy after every missed deadline and is rejected.
+ * <p>
+ * Solves go through {@link HeuristicPuzzleSolver#solve}, never {@code solveParallel}. The A* and breadth-first solvers
+ * run it entirely on the calling thread, so the number of searches running at once is bounded by
+ * {@code carrierThreads}. The distributed solver only waits on that thread while the search runs in worker JVMs of its
+ * own, which the bound does not cover.
+ *
+ * @author ahmad
+ */
+public final class SolveServer implements AutoCloseable {
+
+    private final HeuristicPuzzleSolver solver;
+    private final long defaultDeadlineMillis;
+    private final Semaphore admission;
+    private final ExecutorService carriers;
+    private final ExecutorService requests;
+    private final HttpServer server;
+
+    public SolveServer(int port, HeuristicPuzzleSolver solver, int carrierThreads, int maxInFlight,
+                       long defaultDeadlineMillis) throws IOException {
+        if (!solver.stopsWhenInterrupted()) {
+            throw new IllegalArgumentException("the solver cannot be stopped at a deadline.");
+        }
+        this.solver = solver;
+        this.defaultDeadlineMillis = defaultDeadlineMillis;
+        admission = new Semaphore(maxInFlight);
+        carriers = Executors.newFixedThreadPool(carrierThreads);
+        requests = Executors.newVirtualThreadPerTaskExecutor();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(requests);
+        server.createContext("/solve", this::handle);
+    }
+
+    public SolveServer start() {
+        server.start();
+        return this;
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        requests.shutdownNow();
+        carriers.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "only POST is supported.");
+                return;
+            }
+            if (!admission.tryAcquire()) {
+                respond(exchange, 503, "too many solves in flight.");
+                return;
+            }
+            try {
+                solve(exchange);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                respond(exchange, 500, "internal error.");
+            } finally {
+                admission.release();
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void solve(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI());
+        PuzzleMap puzzle;
+        Heuristic algorithm;
+        long deadline;
+        try (InputStream in = exchange.getRequestBody()) {
+            puzzle = PuzzleParser.parse(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (ParseException e) {
+            respond(exchange, 400, e.getMessage());
+            return;
+        }
+        String name = query.getOrDefault("algorithm", HeuristicAlgorithm.MANHATTAN.name());
+        try {
+            algorithm = heuristic(name);
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, "unknown algorithm: " + name);
+            return;
+        }
+        String millis = query.getOrDefault("deadline", String.valueOf(defaultDeadlineMillis));
+        try {
+            deadline = Long.parseLong(millis);
+        } catch (NumberFormatException e) {
+            respond(exchange, 400, "invalid deadline: " + millis);
+            return;
+        }
+
+        Future<Deque<PuzzleMap>> future = carriers.submit(() -> solver.solve(puzzle, algorithm));
+        Deque<PuzzleMap> solution;
+        try {
+            solution = future.get(deadline, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            respond(exchange, 504, "deadline of " + deadline + " ms exceeded.");
+            return;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "server is shutting down.");
+            return;
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+            respond(exchange, 500, "internal error.");
+            return;
+        }
+
+        if (solution == null) {
+            respond(exchange, 404, "unable to solve the puzzle.");
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("moves=").append(solution.size() - 1).append('\n');
+        for (PuzzleMap step : solution) {
+            sb.append(step).append('\n');
+        }
+        respond(exchange, 200, sb.toString());
+    }
+
+    private static Heuristic heuristic(String name) {
+        for (StandardHeuristic heuristic : StandardHeuristic.values()) {
+            if (heuristic.name().equals(name)) {
+                return heuristic;
+            }
+        }
+        return HeuristicAlgorithm.valueOf(name);
+    }
+
+    private static Map<String, String> parseQuery(URI uri) {
+        Map<String, String> query = new HashMap<>();
+        String raw = uri.getRawQuery();
+        if (raw != null) {
+            for (String pair : raw.split("&")) {
+                int i = pair.indexOf('=');
+                if (i > 0) {
+                    query.put(pair.substring(0, i), pair.substring(i + 1));
+                }
+            }
+        }
+        return query;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int carriers = Runtime.getRuntime().availableProcessors();
+        SolveServer server = new SolveServer(port, HeuristicPuzzleSolverFactory.getAStarPuzzleSolver(),
+                carriers, carriers * 64, TimeUnit.SECONDS.toMillis(10)).start();
+        System.out.println("solve server listening on port " + server.port());
+    }
+}
@@ -0,0 +1,107 @@
+package puzzle;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+
+/**
+ * @author ahmad
+ */
+public final class SolverOptions {
+
+    public static final long UNBOUNDED = Long.MAX_VALUE;
+
+    private static final SolverOptions DEFAULTS = new SolverOptions(MoveSemantics.SINGLE_STEP, Pruning.none(),
+            UNBOUNDED, Paths.get(System.getProperty("java.io.tmpdir")), UNBOUNDED, false, null);
+
+    final MoveSemantics moveSemantics;
+    final Pruning pruning;
+    final long memoryBudget;
+    final Path spillDirectory;
+    final long spillBudget;
+    final boolean deterministic;
+    /**
+     * {@code null} when tracing is off.
+     */
+    final SearchTracer tracer;
+
+    private SolverOptions(MoveSemantics moveSemantics, Pruning pruning, long memoryBudget, Path spillDirectory,
+                          long spillBudget, boolean deterministic, SearchTracer tracer) {
+        this.moveSemantics = moveSemantics;
+        this.pruning = pruning;
+        this.memoryBudget = memoryBudget;
+        this.spillDirectory = spillDirectory;
+        this.spillBudget = spillBudget;
+        this.deterministic = deterministic;
+        this.tracer = tracer;
+    }
+
+    public static SolverOptions defaults() {
+        return DEFAULTS;
+    }
+
+    public SolverOptions withMoveSemantics(MoveSemantics moveSemantics) {
+        return new SolverOptions(Objects.requireNonNull(moveSemantics), pruning, memoryBudget, spillDirectory,
+                spillBudget, deterministic, tracer);
+    }
+
+    public SolverOptions withPruning(Pruning pruning) {
+        return new SolverOptions(moveSemantics, Objects.requireNonNull(pruning), memoryBudget, spillDirectory,
+                spillBudget, deterministic, tracer);
+    }
+
+    /**
+     * limits the estimated heap a single solve may retain for its search state. only the sequential A* search
+     * ({@code solve} of the A* solver) degrades gracefully: once the budget is reached it spills the coldest part of
+     * its open list to disk, then falls back to IDA*, whose memory only grows with the solution depth, and finally
+     * gives up with a {@link SearchBudgetExceededException}.
+     * <p>
+     * every other solver either fails fast or does not enforce the budget at all:
+     * <ul>
+     * <li>parallel A*, deterministic or not, throws {@link SearchBudgetExceededException} as soon as the budget is
+     * reached, without spilling or falling back;</li>
+     * <li>breadth-first search throws it too, but only checks between layers, so it may overshoot by a layer;</li>
+     * <li>the fork/join solver ignores the budget;</li>
+     * <li>the distributed solver refuses it with an {@link IllegalArgumentException}.</li>
+     * </ul>
+     */
+    public SolverOptions withMemoryBudget(long bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("memory budget must be > 0");
+        }
+        return new SolverOptions(moveSemantics, pruning, bytes, spillDirectory, spillBudget, deterministic, tracer);
+    }
+
+    /**
+     * sets where spilled open-list runs are written and how many bytes of them a single solve may keep on disk.
+     */
+    public SolverOptions withSpill(Path directory, long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("spill budget must be >= 0");
+        }
+        return new SolverOptions(moveSemantics, pruning, memoryBudget, Objects.requireNonNull(directory), bytes,
+                deterministic, tracer);
+    }
+
+    /**
+     * makes the parallel solvers return exactly the solution they return with a single thread, whatever the
+     * parallelism and thread timing. ties between equally promising states are broken on their state key, and work
+     * done in parallel is committed in the order a single thread would have done it.
+     * <p>
+     * the A* and breadth-first solvers support it and take less than 15% longer than in the free-running mode, which
+     * {@code DeterministicSearchBenchmark} checks. the fork/join and distributed solvers refuse it with an
+     * {@link IllegalArgumentException}.
+     */
+    public SolverOptions withDeterminism(boolean deterministic) {
+        return new SolverOptions(moveSemantics, pruning, memoryBudget, spillDirectory, spillBudget, deterministic,
+                tracer);
+    }
+
+    /**
+     * records what every solve does into {@code tracer}, or turns tracing off if it is {@code null}.
+     */
+    public SolverOptions withTracer(SearchTracer tracer) {
+        return new SolverOptions(moveSemantics, pruning, memoryBudget, spillDirectory, spillBudget, deterministic,
+                tracer);
+    }
+}
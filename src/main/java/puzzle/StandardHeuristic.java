@@ -0,0 +1,118 @@
+package puzzle;
+
+/**
+ * Lower bounds on the moves left, computed from where the main piece is and what stands in its way.
+ * <p>
+ * To leave the board the main piece must, at some point, sit in the mouth of an exit wide enough for it: the cells
+ * next to that exit it covers right before it starts to stick out. Every other piece in that mouth has to move at
+ * least once before then. None of these heuristics allocate.
+ *
+ * @author ahmad
+ */
+public enum StandardHeuristic implements Heuristic {
+
+    /**
+     * the fewest steps of the main piece to leave the board through any exit that fits it. admissible and consistent
+     * under {@link MoveSemantics#SINGLE_STEP}, but not when a move may cover several cells.
+     */
+    EXIT_DISTANCE {
+        @Override
+        public double estimate(PuzzleMap puzzle) {
+            return exitBound(puzzle, 1, 0);
+        }
+    },
+    /**
+     * one move for the main piece plus the fewest pieces blocking the mouth of an exit. admissible and consistent
+     * under every {@link MoveSemantics}.
+     */
+    EXIT_BLOCKERS {
+        @Override
+        public double estimate(PuzzleMap puzzle) {
+            return puzzle.isSolved ? 0 : exitBound(puzzle, 0, 1) + 1;
+        }
+    },
+    /**
+     * the fewest moves to clear the mouth of an exit and then step out through it: {@link #EXIT_DISTANCE} and
+     * {@link #EXIT_BLOCKERS} through the same exit. admissible and consistent under {@link MoveSemantics#SINGLE_STEP}.
+     */
+    EXIT_CLEARANCE {
+        @Override
+        public double estimate(PuzzleMap puzzle) {
+            return exitBound(puzzle, 1, 1);
+        }
+    };
+
+    /**
+     * @return the minimum over all exits that fit the main piece of {@code distance} times the steps of the main piece
+     * to leave through it plus {@code blockers} times the pieces in its mouth.
+     */
+    private static int exitBound(PuzzleMap puzzle, int distance, int blockers) {
+        int main = puzzle.mainPiece();
+        if (main == 0) {
+            return 0;
+        }
+        int columns = puzzle.columns();
+        int rows = puzzle.rows();
+        int x = puzzle.pieceX(main);
+        int y = puzzle.pieceY(main);
+        int w = puzzle.pieceWidth(main);
+        int h = puzzle.pieceHeight(main);
+        // once the main piece sticks out of an exit its mouth is behind it
+        int inside = x >= 0 && y >= 0 && x + w <= columns && y + h <= rows ? blockers : 0;
+
+        int best = Integer.MAX_VALUE;
+        for (int t = 0; t + w <= columns; t++) {
+            int dx = Math.abs(x - t);
+            if (fitsExit(puzzle, t, -1, w, 1)) {
+                best = Math.min(best, distance * (dx + y + h) + inside * blockers(puzzle, main, t, 0, w, h));
+            }
+            if (fitsExit(puzzle, t, rows, w, 1)) {
+                best = Math.min(best, distance * (dx + rows - y) + inside * blockers(puzzle, main, t, rows - h, w, h));
+            }
+        }
+        for (int t = 0; t + h <= rows; t++) {
+            int dy = Math.abs(y - t);
+            if (fitsExit(puzzle, -1, t, 1, h)) {
+                best = Math.min(best, distance * (dy + x + w) + inside * blockers(puzzle, main, 0, t, w, h));
+            }
+            if (fitsExit(puzzle, columns, t, 1, h)) {
+                best = Math.min(best, distance * (dy + columns - x) +
+                        inside * blockers(puzzle, main, columns - w, t, w, h));
+            }
+        }
+        // no exit fits the main piece, so nothing is known about the moves left
+        return best == Integer.MAX_VALUE ? 0 : best;
+    }
+
+    private static boolean fitsExit(PuzzleMap puzzle, int x, int y, int w, int h) {
+        for (int i = 0; i < w; i++) {
+            for (int j = 0; j < h; j++) {
+                if (!puzzle.isExit(x + i, y + j)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of distinct pieces other than {@code main} in the given rectangle.
+     */
+    private static int blockers(PuzzleMap puzzle, int main, int x, int y, int w, int h) {
+        int count = 0;
+        for (int cell = 0; cell < w * h; cell++) {
+            int id = puzzle.pieceAt(x + cell % w, y + cell / w);
+            if (id == 0 || id == main) {
+                continue;
+            }
+            boolean seen = false;
+            for (int before = 0; before < cell && !seen; before++) {
+                seen = puzzle.pieceAt(x + before % w, y + before / w) == id;
+            }
+            if (!seen) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,28 @@
+package puzzle;
+
+/**
+ * @author ahmad
+ */
+public enum StandardPruningRule implements PruningRule {
+
+    /**
+     * drops a successor that moves the last moved piece straight back to where it came from.
+     */
+    INVERSE_MOVE {
+        @Override
+        public boolean prune(PuzzleMap parent, PuzzleMap successor) {
+            return parent.movedTo != null && successor.movedFrom != null &&
+                    parent.movedTo.equals(successor.movedFrom) &&
+                    parent.movedFrom.equals(successor.movedTo);
+        }
+    },
+    /**
+     * drops a successor whose main piece is walled off from every exit by pieces that can never move again.
+     */
+    MAIN_PIECE_DEADLOCK {
+        @Override
+        public boolean prune(PuzzleMap parent, PuzzleMap successor) {
+            return successor.isMainPieceTrapped();
+        }
+    }
+}
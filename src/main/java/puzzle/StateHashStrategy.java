@@ -0,0 +1,65 @@
+package puzzle;
+
+/**
+ * @author ahmad
+ */
+public enum StateHashStrategy {
+
+    /**
+     * 64-bit Zobrist hashing: every (piece type, cell) pair owns a random key generated once per
+     * {@link PuzzleMap.Border}, and a state's key is the XOR of the keys of its pieces.
+     */
+    ZOBRIST {
+        @Override
+        long pieceKey(PuzzleMap.Border border, Piece piece) {
+            return border.zobristKey(piece);
+        }
+
+        @Override
+        long add(long hash, long pieceKey) {
+            return hash ^ pieceKey;
+        }
+
+        @Override
+        long remove(long hash, long pieceKey) {
+            return hash ^ pieceKey;
+        }
+    },
+    /**
+     * the legacy hash, equal to {@code Set<Piece>.hashCode()} of the pieces in the puzzle.
+     */
+    PIECE_SET {
+        @Override
+        long pieceKey(PuzzleMap.Border border, Piece piece) {
+            return piece.hashCode();
+        }
+
+        @Override
+        long add(long hash, long pieceKey) {
+            return (int) (hash + pieceKey);
+        }
+
+        @Override
+        long remove(long hash, long pieceKey) {
+            return (int) (hash - pieceKey);
+        }
+    };
+
+    abstract long pieceKey(PuzzleMap.Border border, Piece piece);
+
+    abstract long add(long hash, long pieceKey);
+
+    abstract long remove(long hash, long pieceKey);
+
+    long hash(PuzzleMap.Border border, Iterable<Piece> pieces) {
+        long hash = 0;
+        for (Piece piece : pieces) {
+            hash = add(hash, pieceKey(border, piece));
+        }
+        return hash;
+    }
+
+    long move(PuzzleMap.Border border, long hash, Piece from, Piece to) {
+        return add(remove(hash, pieceKey(border, from)), pieceKey(border, to));
+    }
+}
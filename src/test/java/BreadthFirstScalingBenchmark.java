@@ -0,0 +1,52 @@
+import puzzle.*;
+
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how the breadth-first solver scales from 1 to 64 threads on the same board.
+ *
+ * @author ahmad
+ */
+public class BreadthFirstScalingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+
+        char[][] map = {
+                {'X', 'X', 'X', 'X', 'X', 'X'},
+                {'X', 'A', 'E', 'E', 'H', 'X'},
+                {'X', 'A', 'D', 'D', 'H', 'X'},
+                {'X', 'B', 'D', 'D', 'I', 'X'},
+                {'X', 'B', 'F', 'G', 'I', 'X'},
+                {'X', 'C', ' ', ' ', ' ', 'X'},
+                {'X', 'X', 'Z', 'Z', 'X', 'X'}
+        };
+
+        PuzzleMap puzzle = PuzzleParser.parse(map);
+        HeuristicPuzzleSolver solver = HeuristicPuzzleSolverFactory.getBreadthFirstPuzzleSolver();
+        int warmups = 2;
+        int runs = 3;
+
+        for (int i = 0; i < warmups; i++) {
+            solver.solveParallel(puzzle, HeuristicAlgorithm.MANHATTAN, 1);
+        }
+
+        System.out.println("threads   moves     best ms  speedup");
+        long baseline = 0;
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            long best = Long.MAX_VALUE;
+            int moves = -1;
+            for (int i = 0; i < runs; i++) {
+                long start = System.nanoTime();
+                Deque<PuzzleMap> solution = solver.solveParallel(puzzle, HeuristicAlgorithm.MANHATTAN, threads);
+                best = Math.min(best, System.nanoTime() - start);
+                moves = solution == null ? -1 : solution.size() - 1;
+            }
+            if (threads == 1) {
+                baseline = best;
+            }
+            System.out.printf("%7d %7d %11d %8.2f%n", threads, moves, TimeUnit.NANOSECONDS.toMillis(best),
+                    (double) baseline / best);
+        }
+    }
+}
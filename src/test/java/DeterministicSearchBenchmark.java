@@ -0,0 +1,117 @@
+import puzzle.*;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the parallel A* and breadth-first solvers with and without determinism, and checks that the deterministic
+ * runs return the single-threaded solution at every thread count, and that the best deterministic time is less than
+ * {@value #MAX_OVERHEAD_PERCENT}% above the best free-running time at every thread count. A thread count over the
+ * bound is measured for up to {@value #MAX_ROUNDS} rounds of {@value #RUNS} runs before it fails, so a busy host does
+ * not fail it on a single slow round. The fork/join solver is left out, since it refuses deterministic mode; see
+ * {@link SolverOptions#withDeterminism}.
+ *
+ * @author ahmad
+ */
+public class DeterministicSearchBenchmark {
+
+    private static final int WARMUPS = 3;
+    private static final int RUNS = 20;
+    private static final int MAX_ROUNDS = 5;
+    private static final int MAX_THREADS = 16;
+    private static final int MAX_OVERHEAD_PERCENT = 15;
+
+    public static void main(String[] args) throws Exception {
+
+        char[][] hard = {
+                {'X', 'X', 'X', 'X', 'X', 'X'},
+                {'X', 'A', 'D', 'D', 'H', 'X'},
+                {'X', 'A', 'D', 'D', 'H', 'X'},
+                {'X', 'B', 'E', 'E', 'I', 'X'},
+                {'X', 'B', 'F', 'G', 'I', 'X'},
+                {'X', 'C', ' ', ' ', ' ', 'X'},
+                {'X', 'X', 'Z', 'Z', 'X', 'X'}
+        };
+        char[][] easy = {
+                {'X', 'X', 'X', 'X', 'X', 'X'},
+                {'X', 'A', 'E', 'E', 'H', 'X'},
+                {'X', 'A', 'D', 'D', 'H', 'X'},
+                {'X', 'B', 'D', 'D', 'I', 'X'},
+                {'X', 'B', 'F', 'G', 'I', 'X'},
+                {'X', 'C', ' ', ' ', ' ', 'X'},
+                {'X', 'X', 'Z', 'Z', 'X', 'X'}
+        };
+
+        SolverOptions options = SolverOptions.defaults();
+        SolverOptions deterministic = options.withDeterminism(true);
+
+        System.out.println(Runtime.getRuntime().availableProcessors() + " processors");
+        boolean ok = benchmark("A*", PuzzleParser.parse(hard),
+                HeuristicPuzzleSolverFactory.getAStarPuzzleSolver(options),
+                HeuristicPuzzleSolverFactory.getAStarPuzzleSolver(deterministic));
+        ok &= benchmark("breadth-first", PuzzleParser.parse(easy),
+                HeuristicPuzzleSolverFactory.getBreadthFirstPuzzleSolver(options),
+                HeuristicPuzzleSolverFactory.getBreadthFirstPuzzleSolver(deterministic));
+
+        System.out.println(ok ? "OK: deterministic solutions are identical and within " + MAX_OVERHEAD_PERCENT
+                + "% of the free-running time at every thread count"
+                : "FAILED: deterministic solutions differ or cost too much (marked !)");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean benchmark(String name, PuzzleMap puzzle, HeuristicPuzzleSolver free,
+                                     HeuristicPuzzleSolver deterministic) throws Exception {
+        for (int i = 0; i < WARMUPS; i++) {
+            for (int threads = 1; threads <= MAX_THREADS; threads *= 2) {
+                free.solveParallel(puzzle, HeuristicAlgorithm.MANHATTAN, threads);
+                deterministic.solveParallel(puzzle, HeuristicAlgorithm.MANHATTAN, threads);
+            }
+        }
+        List<PuzzleMap> reference = path(deterministic.solve(puzzle, HeuristicAlgorithm.MANHATTAN));
+        boolean ok = true;
+
+        System.out.println(name + ": single-threaded deterministic solution has " + (reference.size() - 1) + " moves");
+        System.out.println("threads  free moves  free ms  det moves  det ms  overhead  rounds  identical");
+        for (int threads = 1; threads <= MAX_THREADS; threads *= 2) {
+            long freeBest = Long.MAX_VALUE;
+            long deterministicBest = Long.MAX_VALUE;
+            int freeMoves = -1;
+            boolean same = true;
+            double overhead = Double.MAX_VALUE;
+            int rounds = 0;
+            while (overhead >= MAX_OVERHEAD_PERCENT && rounds < MAX_ROUNDS) {
+                rounds++;
+                for (int i = 0; i < RUNS; i++) {
+                    // collect the garbage of the previous runs outside of the measurement
+                    System.gc();
+                    long start = System.nanoTime();
+                    List<PuzzleMap> solution = path(free.solveParallel(puzzle, HeuristicAlgorithm.MANHATTAN, threads));
+                    freeBest = Math.min(freeBest, System.nanoTime() - start);
+                    freeMoves = solution.size() - 1;
+
+                    System.gc();
+                    start = System.nanoTime();
+                    solution = path(deterministic.solveParallel(puzzle, HeuristicAlgorithm.MANHATTAN, threads));
+                    deterministicBest = Math.min(deterministicBest, System.nanoTime() - start);
+                    same &= solution.equals(reference);
+                }
+                overhead = 100.0 * (deterministicBest - freeBest) / freeBest;
+            }
+            boolean cheap = overhead < MAX_OVERHEAD_PERCENT;
+            ok &= same && cheap;
+            System.out.printf("%7d %11d %8d %10d %7d %8.1f%%%s %6d %10s%n", threads, freeMoves,
+                    TimeUnit.NANOSECONDS.toMillis(freeBest), reference.size() - 1,
+                    TimeUnit.NANOSECONDS.toMillis(deterministicBest), overhead, cheap ? " " : "!", rounds, same);
+        }
+        System.out.println();
+        return ok;
+    }
+
+    private static List<PuzzleMap> path(Deque<PuzzleMap> solution) {
+        return solution == null ? new ArrayList<>() : new ArrayList<>(solution);
+    }
+}
@@ -0,0 +1,137 @@
+import puzzle.HeuristicPuzzleSolverFactory;
+import puzzle.SolveServer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives a local {@link SolveServer} with an open-loop request stream at several rates and reports latency
+ * percentiles, rejections, missed deadlines and errors (any other status, or no response at all) for each rate. It
+ * first checks that the server refuses the fork/join solver, which cannot be stopped at a deadline, and answers
+ * malformed puzzles, algorithms and deadlines with {@code 400} and a message that names no Java class.
+ *
+ * @author ahmad
+ */
+public class SolveServerLoadTester {
+
+    private static final String PUZZLE = String.join("\n",
+            "XXXXXX",
+            "XA  HX",
+            "XA  HX",
+            "XBDDIX",
+            "XBDDIX",
+            "XC  GX",
+            "XXZZXX");
+
+    public static void main(String[] args) throws Exception {
+
+        int[] rates = {50, 100, 200, 400, 800};
+        long seconds = 3;
+        int carriers = Runtime.getRuntime().availableProcessors();
+
+        try {
+            new SolveServer(0, HeuristicPuzzleSolverFactory.getForkJoinPuzzleSolver(), carriers, carriers * 64, 1000)
+                    .close();
+            System.out.println("FAILED: the server accepted the fork/join solver");
+            System.exit(1);
+        } catch (IllegalArgumentException e) {
+            System.out.println("fork/join solver refused: " + e.getMessage());
+        }
+
+        try (SolveServer server = new SolveServer(0, HeuristicPuzzleSolverFactory.getAStarPuzzleSolver(),
+                carriers, carriers * 64, 1000).start()) {
+
+            HttpClient client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+            URI uri = URI.create("http://127.0.0.1:" + server.port() + "/solve?deadline=250");
+
+            String[][] malformed = {
+                    {"an empty row", "", "XXXXXX\n\nXXZZXX"},
+                    {"a short row", "", "XXXXXX\nXA  HX\nXA  HX\nXXZZ"},
+                    {"two main pieces", "", "XXXXXX\nXDD HX\nXDD HX\nXDD  X\nXDD  X\nXXZZXX"},
+                    {"an unknown algorithm", "&algorithm=SHORTEST", PUZZLE},
+                    {"a malformed deadline", "&deadline=soon", PUZZLE}};
+            for (String[] request : malformed) {
+                HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(uri + request[1]))
+                        .POST(HttpRequest.BodyPublishers.ofString(request[2])).build(),
+                        HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() != 400 || response.body().contains("java.")) {
+                    System.out.println("FAILED: " + request[0] + " got " + response.statusCode() + ": "
+                            + response.body());
+                    System.exit(1);
+                }
+                System.out.println(request[0] + " answered with 400: " + response.body());
+            }
+
+            System.out.println("rate/s    sent      ok  reject timeout  errors   p50 ms   p99 ms");
+            for (int rate : rates) {
+                List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+                AtomicInteger ok = new AtomicInteger();
+                AtomicInteger rejected = new AtomicInteger();
+                AtomicInteger timedOut = new AtomicInteger();
+                AtomicInteger errors = new AtomicInteger();
+
+                long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+                int total = (int) (rate * seconds);
+                long begin = System.nanoTime();
+                try (ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor()) {
+                    for (int i = 0; i < total; i++) {
+                        long scheduled = begin + i * interval;
+                        long delay = scheduled - System.nanoTime();
+                        if (delay > 0) {
+                            TimeUnit.NANOSECONDS.sleep(delay);
+                        }
+                        senders.submit(() -> {
+                            HttpRequest request = HttpRequest.newBuilder(uri)
+                                    .POST(HttpRequest.BodyPublishers.ofString(PUZZLE)).build();
+                            int status;
+                            try {
+                                status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                            } catch (IOException e) {
+                                errors.incrementAndGet();
+                                return null;
+                            }
+                            latencies.add(System.nanoTime() - scheduled);
+                            switch (status) {
+                                case 200:
+                                    ok.incrementAndGet();
+                                    break;
+                                case 503:
+                                    rejected.incrementAndGet();
+                                    break;
+                                case 504:
+                                    timedOut.incrementAndGet();
+                                    break;
+                                default:
+                                    errors.incrementAndGet();
+                            }
+                            return null;
+                        });
+                    }
+                }
+
+                List<Long> sorted = new ArrayList<>(latencies);
+                Collections.sort(sorted);
+                System.out.printf("%6d %7d %7d %7d %7d %7d %8.2f %8.2f%n", rate, total, ok.get(), rejected.get(),
+                        timedOut.get(), errors.get(), percentile(sorted, 0.50), percentile(sorted, 0.99));
+            }
+        }
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) {
+            return Double.NaN;
+        }
+        int i = (int) Math.ceil(p * sorted.size()) - 1;
+        return sorted.get(Math.max(0, i)) / 1e6;
+    }
+}
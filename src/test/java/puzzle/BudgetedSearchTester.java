@@ -0,0 +1,160 @@
+package puzzle;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Forces every phase of {@link BudgetedAStarSearch} with tiny memory and spill budgets, under every move semantics:
+ * <ul>
+ * <li>A* + spill: the memory budget is lowered from one plain A* fits in until the open list has to be spilled, but the
+ * search still finishes without falling back;</li>
+ * <li>IDA*: a budget too small for A* and no disk to spill to, also with the collision-prone
+ * {@link StateHashStrategy#PIECE_SET} keys, which must not make the transposition table skip unexplored states;</li>
+ * <li>failure: a budget too small for even the IDA* path, which must end in a {@link SearchBudgetExceededException}
+ * whose statistics describe a search that really ran out of memory.</li>
+ * </ul>
+ * Every solution must be as short as the one of unbudgeted A*, which holds since the heuristic is admissible, and no
+ * spill file may be left behind.
+ *
+ * @author ahmad
+ */
+public class BudgetedSearchTester {
+
+    private static final Heuristic HEURISTIC = StandardHeuristic.EXIT_BLOCKERS;
+    private static final long LARGE_BUDGET = 4L << 20;
+    private static final long IDA_BUDGET = 64L << 10;
+    private static final long FAILING_BUDGET = 4L << 10;
+    private static final long SPILL_BUDGET = 16L << 20;
+
+    private static Path spillDirectory;
+    private static boolean ok = true;
+
+    public static void main(String[] args) throws Exception {
+
+        String map = "XXXXXX\n" +
+                "XAEEHX\n" +
+                "XADDHX\n" +
+                "XBDDIX\n" +
+                "XBFGIX\n" +
+                "XC   X\n" +
+                "XXZZXX";
+        PuzzleMap start = PuzzleParser.parse(map);
+        PuzzleMap pieceSetStart = PuzzleParser.parse(map, StateHashStrategy.PIECE_SET);
+        spillDirectory = Files.createTempDirectory("budgeted-search");
+
+        for (MoveSemantics semantics : MoveSemantics.values()) {
+            SolverOptions options = SolverOptions.defaults().withMoveSemantics(semantics);
+            int optimum = new AStarPuzzleSolver(options).solve(start, HEURISTIC).size() - 1;
+            System.out.println(semantics + ": unbudgeted A* takes " + optimum + " moves");
+
+            SolverOptions spilling = null;
+            for (long budget = LARGE_BUDGET; budget > IDA_BUDGET; budget -= budget / 32) {
+                SolverOptions candidate = options.withMemoryBudget(budget).withSpill(spillDirectory, SPILL_BUDGET);
+                BudgetedAStarSearch search = new BudgetedAStarSearch(start, HEURISTIC, candidate);
+                search.solve();
+                if (search.statistics().phase.equals("A* + spill")) {
+                    spilling = candidate;
+                    break;
+                }
+            }
+            if (spilling == null) {
+                fail("no memory budget makes A* spill without falling back to IDA*");
+            } else {
+                solve("A* + spill", start, spilling, optimum);
+            }
+            solve("IDA*", start, options.withMemoryBudget(IDA_BUDGET).withSpill(spillDirectory, 0), optimum);
+            solve("IDA*", pieceSetStart, options.withMemoryBudget(IDA_BUDGET).withSpill(spillDirectory, 0), optimum);
+            exceed(start, options.withMemoryBudget(FAILING_BUDGET).withSpill(spillDirectory, SPILL_BUDGET));
+        }
+        Files.delete(spillDirectory);
+
+        System.out.println(ok ? "OK: every phase found a shortest solution and cleaned up" : "FAILED");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static void solve(String phase, PuzzleMap start, SolverOptions options, int optimum) throws Exception {
+        BudgetedAStarSearch search = new BudgetedAStarSearch(start, HEURISTIC, options);
+        Deque<PuzzleMap> solution = search.solve();
+        SearchStatistics statistics = search.statistics();
+        System.out.printf("  %-10s budget = %7d: %s%n", phase, options.memoryBudget, statistics);
+        if (!statistics.phase.equals(phase)) {
+            fail("ended in phase " + statistics.phase + " instead of " + phase);
+        }
+        if (solution == null || !isValid(solution, start, options.moveSemantics)) {
+            fail("no valid solution");
+        } else if (solution.size() - 1 != optimum) {
+            fail("solution takes " + (solution.size() - 1) + " moves instead of " + optimum);
+        }
+        if (statistics.spilledBytes > options.spillBudget) {
+            fail("spilled more than the spill budget");
+        }
+        checkSpillDirectory();
+    }
+
+    private static void exceed(PuzzleMap start, SolverOptions options) throws Exception {
+        try {
+            new BudgetedAStarSearch(start, HEURISTIC, options).solve();
+            fail("a budget of " + options.memoryBudget + " bytes is enough to solve");
+        } catch (SearchBudgetExceededException e) {
+            SearchStatistics statistics = e.statistics();
+            System.out.printf("  %-10s budget = %7d: %s%n", "exceeded", options.memoryBudget, statistics);
+            if (!statistics.phase.equals("IDA*")) {
+                fail("gave up in phase " + statistics.phase);
+            }
+            if (statistics.estimatedBytes <= options.memoryBudget) {
+                fail("gave up within its budget");
+            }
+            if (statistics.expandedNodes <= 0 || statistics.storedNodes <= 0
+                    || statistics.maxDepth < statistics.storedNodes - 1) {
+                fail("inconsistent node counts");
+            }
+            if (statistics.bestHeuristic > HEURISTIC.estimate(start) || statistics.bestHeuristic < 0) {
+                fail("best heuristic out of range");
+            }
+            if (statistics.spilledBytes > options.spillBudget
+                    || (statistics.spillRuns == 0) != (statistics.spilledNodes == 0)) {
+                fail("inconsistent spill counts");
+            }
+            if (statistics.elapsedNanos <= 0) {
+                fail("no elapsed time");
+            }
+        }
+        checkSpillDirectory();
+    }
+
+    private static void checkSpillDirectory() throws IOException {
+        try (Stream<Path> files = Files.list(spillDirectory)) {
+            long left = files.count();
+            if (left > 0) {
+                fail(left + " spill files left behind");
+            }
+        }
+    }
+
+    private static void fail(String problem) {
+        System.out.println("  FAILED: " + problem);
+        ok = false;
+    }
+
+    private static boolean isValid(Deque<PuzzleMap> path, PuzzleMap start, MoveSemantics semantics) {
+        Iterator<PuzzleMap> iterator = path.iterator();
+        PuzzleMap previous = iterator.next();
+        if (!previous.equals(start)) {
+            return false;
+        }
+        while (iterator.hasNext()) {
+            PuzzleMap next = iterator.next();
+            if (!previous.successors(semantics).contains(next)) {
+                return false;
+            }
+            previous = next;
+        }
+        return previous.isSolved;
+    }
+}
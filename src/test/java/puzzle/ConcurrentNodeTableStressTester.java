@@ -0,0 +1,102 @@
+package puzzle;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Hammers a deliberately undersized {@link ConcurrentNodeTable} from many threads and checks that no insertion or
+ * cost improvement was lost.
+ *
+ * @author ahmad
+ */
+public class ConcurrentNodeTableStressTester {
+
+    public static void main(String[] args) throws Exception {
+
+        char[][] map = {
+                {'X', 'X', 'X', 'X', 'X', 'X'},
+                {'X', 'A', 'D', 'D', 'H', 'X'},
+                {'X', 'A', 'D', 'D', 'H', 'X'},
+                {'X', 'B', 'E', 'E', 'I', 'X'},
+                {'X', 'B', 'F', 'G', 'I', 'X'},
+                {'X', 'C', ' ', ' ', ' ', 'X'},
+                {'X', 'X', 'Z', 'Z', 'X', 'X'}
+        };
+
+        List<PuzzleMap> states = reachableStates(PuzzleParser.parse(map), 20_000);
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        int rounds = 8;
+
+        ConcurrentNodeTable table = new ConcurrentNodeTable(64);
+        int[][] best = new int[threads][states.size()];
+        int[][] indexes = new int[threads][states.size()];
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                Random random = new Random(thread);
+                Arrays.fill(best[thread], Integer.MAX_VALUE);
+                go.await();
+                for (int r = 0; r < rounds; r++) {
+                    for (int i = 0; i < states.size(); i++) {
+                        int index = ConcurrentNodeTable.index(table.add(states.get(i)));
+                        int g = random.nextInt(1_000_000);
+                        table.relax(index, g, thread);
+                        best[thread][i] = Math.min(best[thread][i], g);
+                        indexes[thread][i] = index;
+                    }
+                }
+                return null;
+            }));
+        }
+        go.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        check(table.size() == states.size(), "expected " + states.size() + " nodes, found " + table.size());
+        Set<Integer> distinct = new HashSet<>();
+        for (int i = 0; i < states.size(); i++) {
+            int index = indexes[0][i];
+            int expected = Integer.MAX_VALUE;
+            for (int t = 0; t < threads; t++) {
+                check(indexes[t][i] == index, "state " + i + " got different indexes");
+                expected = Math.min(expected, best[t][i]);
+            }
+            check(distinct.add(index), "index " + index + " assigned twice");
+            check(table.indexOf(states.get(i)) == index, "state " + i + " not found");
+            check(table.state(index).equals(states.get(i)), "state " + i + " stored incorrectly");
+            check(table.g(index) == expected, "lost update on state " + i + ": " + table.g(index) + " != " + expected);
+        }
+
+        System.out.println("OK: " + states.size() + " states, " + threads + " threads, " + rounds + " rounds");
+    }
+
+    private static List<PuzzleMap> reachableStates(PuzzleMap start, int limit) {
+        Set<PuzzleMap> seen = new HashSet<>();
+        Deque<PuzzleMap> queue = new ArrayDeque<>();
+        List<PuzzleMap> result = new ArrayList<>();
+        seen.add(start);
+        queue.add(start);
+        while (queue.size() > 0 && result.size() < limit) {
+            PuzzleMap puzzle = queue.poll();
+            result.add(puzzle);
+            for (PuzzleMap next : puzzle.successors(MoveSemantics.SINGLE_STEP)) {
+                if (seen.add(next)) {
+                    queue.add(next);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
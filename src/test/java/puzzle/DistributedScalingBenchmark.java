@@ -0,0 +1,69 @@
+package puzzle;
+
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the distributed solver with 1, 2, 4 and 8 worker JVMs on this host and reports the wall time and the largest
+ * share of the visited states any single worker had to hold. Every solution is checked against the length of the
+ * in-process breadth-first solution.
+ *
+ * @author ahmad
+ */
+public class DistributedScalingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+
+        char[][] map = {
+                {'X', 'X', 'X', 'X', 'X', 'X'},
+                {'X', 'A', 'E', 'E', 'H', 'X'},
+                {'X', 'A', 'D', 'D', 'H', 'X'},
+                {'X', 'B', 'D', 'D', 'I', 'X'},
+                {'X', 'B', 'F', 'G', 'I', 'X'},
+                {'X', 'C', ' ', ' ', ' ', 'X'},
+                {'X', 'X', 'Z', 'Z', 'X', 'X'}
+        };
+
+        PuzzleMap puzzle = PuzzleParser.parse(map);
+        int maxWorkers = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int runs = 2;
+
+        Deque<PuzzleMap> reference = new BreadthFirstPuzzleSolver(SolverOptions.defaults())
+                .solve(puzzle, HeuristicAlgorithm.MANHATTAN);
+        int optimum = reference.size() - 1;
+        System.out.println("in-process breadth-first solution: " + optimum + " moves");
+
+        DistributedPuzzleSolver solver = new DistributedPuzzleSolver(SolverOptions.defaults());
+        System.out.println("workers   moves     best ms  speedup  max stored/worker  max MB/worker");
+        long baseline = 0;
+        boolean ok = true;
+        for (int workers = 1; workers <= maxWorkers; workers *= 2) {
+            long best = Long.MAX_VALUE;
+            int moves = -1;
+            long maxStored = 0;
+            long maxBytes = 0;
+            for (int i = 0; i < runs; i++) {
+                long start = System.nanoTime();
+                Deque<PuzzleMap> solution = solver.solveParallel(puzzle, HeuristicAlgorithm.MANHATTAN, workers);
+                best = Math.min(best, System.nanoTime() - start);
+                moves = solution == null ? -1 : solution.size() - 1;
+                ok &= moves == optimum && solution.getFirst() == puzzle && solution.getLast().isSolved;
+                maxStored = 0;
+                maxBytes = 0;
+                for (SearchStatistics statistics : solver.workerStatistics()) {
+                    maxStored = Math.max(maxStored, statistics.storedNodes);
+                    maxBytes = Math.max(maxBytes, statistics.estimatedBytes);
+                }
+            }
+            if (workers == 1) {
+                baseline = best;
+            }
+            System.out.printf("%7d %7d %11d %8.2f %18d %14.1f%n", workers, moves, TimeUnit.NANOSECONDS.toMillis(best),
+                    (double) baseline / best, maxStored, maxBytes / 1e6);
+        }
+        System.out.println(ok ? "OK: every solution is a shortest one" : "FAILED: a solution is not a shortest one");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package puzzle;
+
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.*;
+
+/**
+ * Checks that the distributed solver returns shortest solutions with several worker JVMs. Every board is solved under
+ * every move semantics with 2 to 8 workers, a few times each so that batches arrive in different orders, and the
+ * length of every solution is compared with the one of the in-process breadth-first solver. Every solution must also
+ * be a valid sequence of moves from the start to a solved state.
+ * <p>
+ * The solver must refuse the options it cannot honour, and the pruning hits of its workers must reach the options. They
+ * are printed next to the hits of the in-process breadth-first solver, which stops within the last layer rather than
+ * at its end and may keep other parents for the same states, so the two are close but need not be equal.
+ * <p>
+ * Last, solves of the first board are cancelled at several points, from worker start-up to the middle of the search,
+ * and each must return within {@value #CANCEL_MILLIS} ms and leave no worker process behind.
+ *
+ * @author ahmad
+ */
+public class DistributedSolverTester {
+
+    private static final int REPEATS = 3;
+    private static final long CANCEL_MILLIS = 1000;
+    private static final long[] CANCEL_DELAYS_MILLIS = {50, 300, 1000, 2000};
+
+    public static void main(String[] args) throws Exception {
+
+        String[] boards = {
+                "XXXXXX\n" +
+                        "XAEEHX\n" +
+                        "XADDHX\n" +
+                        "XBDDIX\n" +
+                        "XBFGIX\n" +
+                        "XC   X\n" +
+                        "XXZZXX",
+                "XXXXXX\n" +
+                        "XCDDCX\n" +
+                        "XCDDCX\n" +
+                        "XAEE X\n" +
+                        "XA   X\n" +
+                        "XXZZXX",
+                "XXXXXXX\n" +
+                        "XCC   X\n" +
+                        "XDDA  Z\n" +
+                        "XDDA  Z\n" +
+                        "XEE   X\n" +
+                        "XXXXXXX"
+        };
+
+        boolean ok = true;
+        for (String board : boards) {
+            PuzzleMap start = PuzzleParser.parse(board);
+            for (MoveSemantics semantics : MoveSemantics.values()) {
+                SolverOptions options = SolverOptions.defaults().withMoveSemantics(semantics);
+                Deque<PuzzleMap> reference = new BreadthFirstPuzzleSolver(options)
+                        .solve(start, HeuristicAlgorithm.MANHATTAN);
+                int optimum = reference == null ? -1 : reference.size() - 1;
+                DistributedPuzzleSolver solver = new DistributedPuzzleSolver(options);
+                StringBuilder line = new StringBuilder(String.format("%-13s optimum = %3d, distributed:", semantics,
+                        optimum));
+                for (int workers = 2; workers <= 8; workers *= 2) {
+                    for (int i = 0; i < REPEATS; i++) {
+                        Deque<PuzzleMap> solution = solver.solveParallel(start, HeuristicAlgorithm.MANHATTAN, workers);
+                        int moves = solution == null ? -1 : solution.size() - 1;
+                        boolean valid = moves == optimum && (solution == null || isValid(solution, start, semantics));
+                        ok &= valid;
+                        line.append(' ').append(moves).append(valid ? "" : "!");
+                    }
+                }
+                System.out.println(line);
+            }
+        }
+
+        ok &= refuse();
+        ok &= pruning(PuzzleParser.parse(boards[0]));
+        ok &= cancel(PuzzleParser.parse(boards[0]));
+        System.out.println(ok ? "OK: every distributed solution is a shortest one and every cancelled solve stopped"
+                : "FAILED: a distributed solution (marked !) is not a shortest valid one, or a cancel did not stop it");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean refuse() {
+        SolverOptions[] unsupported = {
+                SolverOptions.defaults().withDeterminism(true),
+                SolverOptions.defaults().withMemoryBudget(1 << 20),
+                SolverOptions.defaults().withTracer(new SearchTracer(1)),
+                SolverOptions.defaults().withPruning(Pruning.of((parent, successor) -> false))};
+        boolean ok = true;
+        for (SolverOptions options : unsupported) {
+            try {
+                new DistributedPuzzleSolver(options);
+                System.out.println("accepted options it cannot honour !");
+                ok = false;
+            } catch (IllegalArgumentException e) {
+                System.out.println("refused: " + e.getMessage());
+            }
+        }
+        return ok;
+    }
+
+    private static boolean pruning(PuzzleMap start) throws Exception {
+        Pruning distributed = Pruning.standard();
+        Pruning local = Pruning.standard();
+        new DistributedPuzzleSolver(SolverOptions.defaults().withPruning(distributed))
+                .solveParallel(start, HeuristicAlgorithm.MANHATTAN, 4);
+        new BreadthFirstPuzzleSolver(SolverOptions.defaults().withPruning(local))
+                .solve(start, HeuristicAlgorithm.MANHATTAN);
+        long hits = distributed.hits().values().stream().mapToLong(Long::longValue).sum();
+        boolean ok = hits > 0;
+        System.out.println("pruning hits: distributed " + distributed.hits() + ", in-process " + local.hits()
+                + (ok ? "" : " !"));
+        return ok;
+    }
+
+    private static boolean cancel(PuzzleMap start) throws InterruptedException {
+        boolean ok = true;
+        DistributedPuzzleSolver solver = new DistributedPuzzleSolver(SolverOptions.defaults());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            for (long delay : CANCEL_DELAYS_MILLIS) {
+                Future<Deque<PuzzleMap>> solve = executor.submit(() ->
+                        solver.solveParallel(start, HeuristicAlgorithm.MANHATTAN, 4));
+                Thread.sleep(delay);
+                long cancelled = System.nanoTime();
+                boolean finished = solve.isDone();
+                solve.cancel(true);
+                // the next task only starts once the cancelled solve has really returned
+                executor.submit(() -> {
+                }).get(CANCEL_MILLIS * 10, TimeUnit.MILLISECONDS);
+                long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - cancelled);
+                long left = ProcessHandle.current().children().filter(ProcessHandle::isAlive).count();
+                boolean valid = finished || millis <= CANCEL_MILLIS && left == 0;
+                ok &= valid;
+                System.out.printf("cancelled after %4d ms: %s%s%n", delay,
+                        finished ? "already finished" : "returned in " + millis + " ms, " + left + " workers left",
+                        valid ? "" : " !");
+            }
+        } catch (ExecutionException | TimeoutException e) {
+            System.out.println("cancelled solve did not return: " + e);
+            ok = false;
+        } finally {
+            executor.shutdownNow();
+        }
+        return ok;
+    }
+
+    private static boolean isValid(Deque<PuzzleMap> path, PuzzleMap start, MoveSemantics semantics) {
+        Iterator<PuzzleMap> iterator = path.iterator();
+        PuzzleMap previous = iterator.next();
+        if (!previous.equals(start)) {
+            return false;
+        }
+        while (iterator.hasNext()) {
+            PuzzleMap next = iterator.next();
+            if (!previous.successors(semantics).contains(next)) {
+                return false;
+            }
+            previous = next;
+        }
+        return previous.isSolved;
+    }
+}
@@ -0,0 +1,220 @@
+package puzzle;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks heuristics against exact distances. Every state reachable from a board is enumerated, the true number of
+ * moves left is found by a backward breadth-first search from the solved states, and each heuristic is then checked
+ * for admissibility ({@code h <= moves left}) and consistency ({@code h(s) <= 1 + h(s')} for every move). It also
+ * times A* with each heuristic, to weigh the cost of a heuristic against how much it guides the search.
+ *
+ * @author ahmad
+ */
+public class HeuristicAdmissibilityTester {
+
+    private static final Map<String, Heuristic> HEURISTICS = new LinkedHashMap<>();
+
+    static {
+        for (HeuristicAlgorithm algorithm : HeuristicAlgorithm.values()) {
+            HEURISTICS.put(algorithm.name(), algorithm);
+        }
+        for (StandardHeuristic heuristic : StandardHeuristic.values()) {
+            HEURISTICS.put(heuristic.name(), heuristic);
+        }
+        HEURISTICS.put("max(CLEARANCE, BLOCKERS)",
+                Heuristic.max(StandardHeuristic.EXIT_CLEARANCE, StandardHeuristic.EXIT_BLOCKERS));
+        HEURISTICS.put("0.5 DISTANCE + 0.5 BLOCKERS", Heuristic.weightedSum(new double[]{0.5, 0.5},
+                StandardHeuristic.EXIT_DISTANCE, StandardHeuristic.EXIT_BLOCKERS));
+    }
+
+    /**
+     * the heuristics that document themselves as admissible and consistent under the given semantics.
+     */
+    private static Set<String> promised(MoveSemantics semantics) {
+        Set<String> promised = new HashSet<>(Collections.singleton(StandardHeuristic.EXIT_BLOCKERS.name()));
+        if (semantics == MoveSemantics.SINGLE_STEP) {
+            promised.add(StandardHeuristic.EXIT_DISTANCE.name());
+            promised.add(StandardHeuristic.EXIT_CLEARANCE.name());
+            promised.add("max(CLEARANCE, BLOCKERS)");
+            promised.add("0.5 DISTANCE + 0.5 BLOCKERS");
+        }
+        return promised;
+    }
+
+    private static final class Component {
+
+        final List<PuzzleMap> states = new ArrayList<>();
+        final List<int[]> successors = new ArrayList<>();
+        int[] distances;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        String bottomExit = "XXXXXX\n" +
+                "XCDDCX\n" +
+                "XCDDCX\n" +
+                "XAEE X\n" +
+                "XA   X\n" +
+                "XXZZXX";
+        String sideExit = "XXXXXXX\n" +
+                "XCC   X\n" +
+                "XDDA  Z\n" +
+                "XDDA  Z\n" +
+                "XEE   X\n" +
+                "XXXXXXX";
+
+        boolean ok = true;
+        for (String board : new String[]{bottomExit, sideExit}) {
+            PuzzleMap start = PuzzleParser.parse(board);
+            for (MoveSemantics semantics : MoveSemantics.values()) {
+                ok &= check(start, semantics);
+            }
+        }
+        System.out.println(ok ? "OK: every heuristic keeps its documented guarantees"
+                : "FAILED: a heuristic broke its documented guarantees");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean check(PuzzleMap start, MoveSemantics semantics) throws Exception {
+        Component component = explore(start, semantics);
+        int solvable = 0;
+        for (int d : component.distances) {
+            if (d >= 0) {
+                solvable++;
+            }
+        }
+        System.out.println(semantics + ": " + component.states.size() + " states, " + solvable + " can be solved, " +
+                "optimum = " + component.distances[0] + " moves");
+        System.out.println("heuristic                     admissible  consistent  h/optimum  ns/state" +
+                "  A* moves  A* ms");
+
+        Set<String> promised = promised(semantics);
+        boolean ok = true;
+        for (Map.Entry<String, Heuristic> entry : HEURISTICS.entrySet()) {
+            Heuristic heuristic = entry.getValue();
+            int n = component.states.size();
+            double[] h = new double[n];
+            long time = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                h[i] = heuristic.estimate(component.states.get(i));
+            }
+            long nanosPerState = (System.nanoTime() - time) / n;
+
+            long overestimates = 0;
+            double ratio = 0;
+            for (int i = 0; i < n; i++) {
+                int d = component.distances[i];
+                if (d < 0) {
+                    continue;
+                }
+                if (h[i] > d + 1e-9) {
+                    overestimates++;
+                }
+                if (d > 0) {
+                    ratio += h[i] / d;
+                }
+            }
+            long inconsistencies = 0;
+            for (int i = 0; i < n; i++) {
+                for (int j : component.successors.get(i)) {
+                    if (h[i] > 1 + h[j] + 1e-9) {
+                        inconsistencies++;
+                    }
+                }
+            }
+
+            SolverOptions options = SolverOptions.defaults().withMoveSemantics(semantics);
+            time = System.nanoTime();
+            Deque<PuzzleMap> solution = new AStarPuzzleSolver(options).solve(start, heuristic);
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - time);
+            int moves = solution == null ? -1 : solution.size() - 1;
+
+            System.out.printf("%-29s %10s %11s %10.2f %9d %9d %6d%n", entry.getKey(),
+                    overestimates == 0 ? "yes" : overestimates + " no",
+                    inconsistencies == 0 ? "yes" : inconsistencies + " no",
+                    ratio / Math.max(1, solvable - 1), nanosPerState, moves, millis);
+
+            if (promised.contains(entry.getKey()) && (overestimates > 0 || inconsistencies > 0 ||
+                    moves != component.distances[0])) {
+                System.out.println("  ^ expected an admissible, consistent heuristic and an optimal A* solution");
+                ok = false;
+            }
+        }
+        System.out.println();
+        return ok;
+    }
+
+    /**
+     * enumerates every state reachable from {@code start}, then finds the exact moves left from each of them with a
+     * backward breadth-first search from the solved states. solved states are terminal.
+     */
+    private static Component explore(PuzzleMap start, MoveSemantics semantics) {
+        Component component = new Component();
+        Map<PuzzleMap, Integer> ids = new HashMap<>();
+        ids.put(start, 0);
+        component.states.add(start);
+        for (int i = 0; i < component.states.size(); i++) {
+            PuzzleMap puzzle = component.states.get(i);
+            if (puzzle.isSolved) {
+                component.successors.add(new int[0]);
+                continue;
+            }
+            List<PuzzleMap> successors = puzzle.successors(semantics);
+            int[] edges = new int[successors.size()];
+            for (int s = 0; s < edges.length; s++) {
+                PuzzleMap successor = successors.get(s);
+                Integer id = ids.get(successor);
+                if (id == null) {
+                    id = component.states.size();
+                    ids.put(successor, id);
+                    component.states.add(successor);
+                }
+                edges[s] = id;
+            }
+            component.successors.add(edges);
+        }
+
+        int n = component.states.size();
+        int[] predecessorCount = new int[n + 1];
+        for (int[] edges : component.successors) {
+            for (int j : edges) {
+                predecessorCount[j + 1]++;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            predecessorCount[i + 1] += predecessorCount[i];
+        }
+        int[] predecessors = new int[predecessorCount[n]];
+        int[] fill = Arrays.copyOf(predecessorCount, n);
+        for (int i = 0; i < n; i++) {
+            for (int j : component.successors.get(i)) {
+                predecessors[fill[j]++] = i;
+            }
+        }
+
+        int[] distances = new int[n];
+        Arrays.fill(distances, -1);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int i = 0; i < n; i++) {
+            if (component.states.get(i).isSolved) {
+                distances[i] = 0;
+                queue.add(i);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int j = queue.poll();
+            for (int p = predecessorCount[j]; p < predecessorCount[j + 1]; p++) {
+                int i = predecessors[p];
+                if (distances[i] < 0) {
+                    distances[i] = distances[j] + 1;
+                    queue.add(i);
+                }
+            }
+        }
+        component.distances = distances;
+        return component;
+    }
+}
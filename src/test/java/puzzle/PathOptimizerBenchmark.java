@@ -0,0 +1,139 @@
+package puzzle;
+
+import java.util.*;
+
+/**
+ * Optimizes long solutions on the breadth-first benchmark board under every move semantics and with 1 to 4 threads,
+ * reports how much shorter they got and checks that every optimized path is still a valid solution: each state
+ * follows from the one before it by a single move. The solutions are those of the near-greedy A* solver, the same
+ * solutions after a random walk of 30 moves, which is what a player's own attempt looks like, and those of the
+ * fork/join solver, a search that really wanders.
+ * <p>
+ * It also checks the merging pass alone on a fixed path of single steps: three steps of one piece in a straight line,
+ * then two steps of another piece around a corner. Under {@link MoveSemantics#STRAIGHT_LINE} only the first three
+ * merge, under {@link MoveSemantics#ANY_PATH} both runs do, and under {@link MoveSemantics#SINGLE_STEP} nothing does.
+ *
+ * @author ahmad
+ */
+public class PathOptimizerBenchmark {
+
+    public static void main(String[] args) throws Exception {
+
+        char[][] map = {
+                {'X', 'X', 'X', 'X', 'X', 'X'},
+                {'X', 'A', 'E', 'E', 'H', 'X'},
+                {'X', 'A', 'D', 'D', 'H', 'X'},
+                {'X', 'B', 'D', 'D', 'I', 'X'},
+                {'X', 'B', 'F', 'G', 'I', 'X'},
+                {'X', 'C', ' ', ' ', ' ', 'X'},
+                {'X', 'X', 'Z', 'Z', 'X', 'X'}
+        };
+
+        PuzzleMap puzzle = PuzzleParser.parse(map);
+        int depth = 4;
+        int nodes = 50_000;
+        int walk = 30;
+
+        boolean ok = checkMerging(puzzle);
+        for (MoveSemantics semantics : MoveSemantics.values()) {
+            SolverOptions options = SolverOptions.defaults().withMoveSemantics(semantics);
+            AStarPuzzleSolver solver = new AStarPuzzleSolver(options);
+            Deque<PuzzleMap> greedy = solver.solve(puzzle, HeuristicAlgorithm.MANHATTAN);
+
+            Random random = new Random(42);
+            Deque<PuzzleMap> wandering = new ArrayDeque<>(Collections.singleton(puzzle));
+            for (int i = 0; i < walk; i++) {
+                List<PuzzleMap> successors = wandering.getLast().successors(semantics);
+                successors.removeIf(successor -> successor.isSolved);
+                wandering.addLast(successors.get(random.nextInt(successors.size())));
+            }
+            Deque<PuzzleMap> rest = solver.solve(wandering.getLast(), HeuristicAlgorithm.MANHATTAN);
+            rest.removeFirst();
+            wandering.addAll(rest);
+
+            Deque<PuzzleMap> forkJoin = new ForkJoinPuzzleSolver(options)
+                    .solveParallel(puzzle, HeuristicAlgorithm.MANHATTAN, 4);
+
+            PathOptimizer optimizer = new PathOptimizer(options, depth, nodes);
+            PathOptimizer mergeOnly = new PathOptimizer(options, 0, nodes);
+            String[] names = {"greedy A*", "random walk + greedy A*", "fork/join"};
+            List<Deque<PuzzleMap>> solutions = Arrays.asList(greedy, wandering, forkJoin);
+            for (int s = 0; s < names.length; s++) {
+                System.out.println(semantics + ", " + names[s] + ":");
+                PathOptimizer.Result merged = mergeOnly.optimize(solutions.get(s));
+                ok &= isValid(merged.path, puzzle, semantics);
+                System.out.println("  no shortcut search: " + merged);
+                for (int threads = 1; threads <= 4; threads *= 2) {
+                    PathOptimizer.Result result = optimizer.optimize(solutions.get(s), threads);
+                    boolean valid = isValid(result.path, puzzle, semantics);
+                    ok &= valid;
+                    System.out.println("  threads = " + threads + ": " + result + (valid ? "" : "  INVALID PATH"));
+                }
+            }
+        }
+        System.out.println(ok ? "OK: every optimized path is a valid solution"
+                : "FAILED: an optimized path is not a valid solution or merged the wrong moves");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean checkMerging(PuzzleMap puzzle) throws Exception {
+        // C steps right along the empty bottom row, then F steps down into it and left into the corner
+        Deque<PuzzleMap> steps = new ArrayDeque<>(Collections.singleton(puzzle));
+        int[][] moves = {{0, 4, 1, 4}, {1, 4, 2, 4}, {2, 4, 3, 4}, {1, 3, 1, 4}, {1, 4, 0, 4}};
+        for (int[] move : moves) {
+            steps.addLast(step(steps.getLast(), move[0], move[1], move[2], move[3]));
+        }
+
+        boolean ok = true;
+        MoveSemantics[] semantics = {MoveSemantics.SINGLE_STEP, MoveSemantics.STRAIGHT_LINE, MoveSemantics.ANY_PATH};
+        int[] merged = {0, 2, 3};
+        for (int i = 0; i < semantics.length; i++) {
+            PathOptimizer.Result result = new PathOptimizer(SolverOptions.defaults().withMoveSemantics(semantics[i]),
+                    0, 1).optimize(steps);
+            boolean valid = result.mergedMoves == merged[i] && result.optimizedMoves == moves.length - merged[i]
+                    && result.path.getFirst().equals(puzzle) && result.path.getLast().equals(steps.getLast())
+                    && follows(result.path, semantics[i]);
+            ok &= valid;
+            System.out.println("merging only, " + semantics[i] + ": " + result
+                    + (valid ? "" : "  expected " + merged[i] + " merged moves"));
+        }
+        return ok;
+    }
+
+    /**
+     * @return the successor of {@code puzzle} in which the piece at ({@code fromX}, {@code fromY}) moved one step to
+     * ({@code toX}, {@code toY}).
+     */
+    private static PuzzleMap step(PuzzleMap puzzle, int fromX, int fromY, int toX, int toY) {
+        for (PuzzleMap successor : puzzle.successors(MoveSemantics.SINGLE_STEP)) {
+            if (successor.movedFrom.x == fromX && successor.movedFrom.y == fromY
+                    && successor.movedTo.x == toX && successor.movedTo.y == toY) {
+                return successor;
+            }
+        }
+        throw new IllegalStateException("no move from (" + fromX + ", " + fromY + ") to (" + toX + ", " + toY
+                + ") in\n" + puzzle);
+    }
+
+    private static boolean isValid(Deque<PuzzleMap> path, PuzzleMap start, MoveSemantics semantics) {
+        return path.getFirst().equals(start) && path.getLast().isSolved && follows(path, semantics);
+    }
+
+    /**
+     * @return whether each state of {@code path} follows from the one before it by a single move.
+     */
+    private static boolean follows(Deque<PuzzleMap> path, MoveSemantics semantics) {
+        Iterator<PuzzleMap> iterator = path.iterator();
+        PuzzleMap previous = iterator.next();
+        while (iterator.hasNext()) {
+            PuzzleMap next = iterator.next();
+            if (!previous.successors(semantics).contains(next)) {
+                return false;
+            }
+            previous = next;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,135 @@
+package puzzle;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the levels of {@link PuzzleGenerator} under every move semantics on two small templates, one with a single
+ * deep component and one with many shallow ones: every level must parse back from its board, the breadth-first
+ * solver must solve it in exactly its reported depth, its component must have the reported size, and no two levels
+ * may lie in the same component. It also checks that generating stops with the failure, instead of hanging, when a
+ * worker throws.
+ *
+ * @author ahmad
+ */
+public class PuzzleGeneratorTester {
+
+    private static final int PARALLELISM = 4;
+
+    public static void main(String[] args) throws Exception {
+
+        PuzzleMap[] templates = {
+                PuzzleParser.parse("XXXXXX\n" +
+                        "XCDDCX\n" +
+                        "XCDDCX\n" +
+                        "XAEE X\n" +
+                        "XA   X\n" +
+                        "XXZZXX"),
+                PuzzleParser.parse("XXXXXX\n" +
+                        "XADDBX\n" +
+                        "XADDBX\n" +
+                        "XEEHIX\n" +
+                        "XC HIX\n" +
+                        "XXZZXX")
+        };
+
+        boolean ok = true;
+        MoveSemantics[] semanticsValues = MoveSemantics.values();
+        for (int i = 0; i < templates.length * semanticsValues.length; i++) {
+            PuzzleMap template = templates[i / semanticsValues.length];
+            MoveSemantics semantics = semanticsValues[i % semanticsValues.length];
+            SolverOptions options = SolverOptions.defaults().withMoveSemantics(semantics);
+            Queue<PuzzleGenerator.Level> levels = new ConcurrentLinkedQueue<>();
+            long start = System.nanoTime();
+            new PuzzleGenerator(template, options).generateAll(PARALLELISM, levels::add);
+            long elapsed = System.nanoTime() - start;
+
+            Map<PuzzleMap, PuzzleGenerator.Level> components = new HashMap<>();
+            int hardest = 0;
+            int failures = 0;
+            for (PuzzleGenerator.Level level : levels) {
+                hardest = Math.max(hardest, level.depth);
+                String problem = check(level, options, components);
+                if (problem != null) {
+                    failures++;
+                    if (failures <= 3) {
+                        System.out.println("  " + problem + ":\n" + level);
+                    }
+                }
+            }
+            System.out.printf("%-13s levels = %4d, hardest = %3d, failures = %d (%d ms)%n", semantics, levels.size(),
+                    hardest, failures, TimeUnit.NANOSECONDS.toMillis(elapsed));
+            ok &= failures == 0 && !levels.isEmpty();
+        }
+
+        ok &= terminatesOnFailure(templates[0]);
+
+        System.out.println(ok ? "OK: every level checks out" : "FAILED");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return what is wrong with {@code level}, or {@code null}. the states of its component are added to
+     * {@code components}.
+     */
+    private static String check(PuzzleGenerator.Level level, SolverOptions options,
+                                Map<PuzzleMap, PuzzleGenerator.Level> components) throws Exception {
+        PuzzleMap parsed = PuzzleParser.parse(level.start.board());
+        if (!parsed.equals(level.start)) {
+            return "does not parse back";
+        }
+        Deque<PuzzleMap> solution = new BreadthFirstPuzzleSolver(options).solve(parsed, HeuristicAlgorithm.MANHATTAN);
+        if (solution == null || solution.size() - 1 != level.depth) {
+            return "solved in " + (solution == null ? "no" : solution.size() - 1) + " moves";
+        }
+
+        // every move can be undone, so the states reachable from the level are exactly its component
+        List<PuzzleMap> component = new ArrayList<>(Collections.singletonList(level.start));
+        Set<PuzzleMap> seen = new HashSet<>(component);
+        for (int i = 0; i < component.size(); i++) {
+            PuzzleMap puzzle = component.get(i);
+            if (puzzle.isSolved) {
+                continue;
+            }
+            for (PuzzleMap successor : puzzle.successors(options.moveSemantics)) {
+                if (seen.add(successor)) {
+                    component.add(successor);
+                }
+            }
+        }
+        if (component.size() != level.componentSize) {
+            return "component has " + component.size() + " states";
+        }
+        for (PuzzleMap puzzle : component) {
+            PuzzleGenerator.Level other = components.putIfAbsent(puzzle, level);
+            if (other != null) {
+                return "shares its component with\n" + other;
+            }
+        }
+        return null;
+    }
+
+    private static boolean terminatesOnFailure(PuzzleMap template) throws InterruptedException {
+        RuntimeException failure = new RuntimeException("a failing consumer");
+        Throwable[] thrown = new Throwable[1];
+        Thread generator = new Thread(() -> {
+            try {
+                new PuzzleGenerator(template, SolverOptions.defaults()).generateAll(1, level -> {
+                    throw failure;
+                });
+            } catch (Throwable e) {
+                thrown[0] = e;
+            }
+        }, "generator");
+        generator.setDaemon(true);
+        generator.start();
+        generator.join(TimeUnit.SECONDS.toMillis(60));
+        boolean ok = !generator.isAlive() && thrown[0] instanceof IllegalStateException
+                && thrown[0].getCause() == failure;
+        System.out.println("failing worker: " + (generator.isAlive() ? "generate hangs" : "threw " + thrown[0]));
+        return ok;
+    }
+}
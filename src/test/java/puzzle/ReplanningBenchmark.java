@@ -0,0 +1,98 @@
+package puzzle;
+
+import java.util.*;
+
+/**
+ * Plays a game against a {@link PlanningSession}: the simulated player follows the plan or, every other move, steps off
+ * it to a random neighbouring state. Each re-plan is timed against planning from scratch from the same state, and
+ * both plans must have the same length.
+ *
+ * @author ahmad
+ */
+public class ReplanningBenchmark {
+
+    private static final int MOVES = 40;
+    private static final int WARMUPS = 3;
+
+    public static void main(String[] args) throws Exception {
+
+        String easy = "XXXXXX\n" +
+                "XAEEHX\n" +
+                "XADDHX\n" +
+                "XBDDIX\n" +
+                "XBFGIX\n" +
+                "XC   X\n" +
+                "XXZZXX";
+        String bottomExit = "XXXXXX\n" +
+                "XCDDCX\n" +
+                "XCDDCX\n" +
+                "XAEE X\n" +
+                "XA   X\n" +
+                "XXZZXX";
+
+        boolean ok = true;
+        for (String board : new String[]{easy, bottomExit}) {
+            ok &= play(PuzzleParser.parse(board), StandardHeuristic.EXIT_CLEARANCE);
+        }
+        System.out.println(ok ? "OK: every re-plan was as short as a plan from scratch"
+                : "FAILED: a re-plan was longer than a plan from scratch");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean play(PuzzleMap start, Heuristic heuristic) throws Exception {
+        SolverOptions options = SolverOptions.defaults();
+        for (int i = 0; i < WARMUPS; i++) {
+            new PlanningSession(start, heuristic, options).plan();
+        }
+
+        Random random = new Random(42);
+        PlanningSession session = new PlanningSession(start, heuristic, options);
+        long time = System.nanoTime();
+        Deque<PuzzleMap> plan = session.plan();
+        System.out.printf("initial plan: %d moves, %d expanded, %.2f ms%n", plan.size() - 1, session.expandedNodes(),
+                (System.nanoTime() - time) / 1e6);
+        System.out.println("move  kind      plan  re-plan expanded      ms  scratch expanded      ms");
+
+        boolean ok = true;
+        long replanNanos = 0;
+        long scratchNanos = 0;
+        for (int move = 1; move <= MOVES && plan != null && plan.size() > 2; move++) {
+            PuzzleMap current = session.current();
+            boolean detour = move % 2 == 0;
+            PuzzleMap next;
+            if (detour) {
+                List<PuzzleMap> successors = current.successors(options.moveSemantics);
+                successors.removeIf(puzzle -> puzzle.isSolved);
+                next = successors.get(random.nextInt(successors.size()));
+            } else {
+                plan.pollFirst();
+                next = plan.peekFirst();
+            }
+
+            time = System.nanoTime();
+            plan = session.moveTo(next);
+            long replan = System.nanoTime() - time;
+            long replanExpanded = session.expandedNodes();
+
+            PlanningSession scratch = new PlanningSession(next, heuristic, options);
+            time = System.nanoTime();
+            Deque<PuzzleMap> expected = scratch.plan();
+            long fresh = System.nanoTime() - time;
+
+            replanNanos += replan;
+            scratchNanos += fresh;
+            System.out.printf("%4d  %-8s %5d %17d %7.2f %17d %7.2f%n", move, detour ? "detour" : "follow",
+                    plan.size() - 1, replanExpanded, replan / 1e6, scratch.expandedNodes(), fresh / 1e6);
+            if (plan.size() != expected.size()) {
+                System.out.println("  ^ expected " + (expected.size() - 1) + " moves");
+                ok = false;
+            }
+        }
+        System.out.printf("total re-plan time %.2f ms, from scratch %.2f ms (%.1f%%), %d states with known " +
+                        "distance%n%n", replanNanos / 1e6, scratchNanos / 1e6, 100.0 * replanNanos / scratchNanos,
+                session.knownStates());
+        return ok;
+    }
+}
@@ -0,0 +1,198 @@
+package puzzle;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what tracing costs the A* and breadth-first solvers, with the tracer off and on, and prints the analysis
+ * of one trace of every solver. With tracing off the solvers must be as fast as they are without the tracing hooks;
+ * compare the {@code off} column against earlier runs of the other benchmarks. Run it with
+ * {@code -XX:StartFlightRecording:settings=profile} and {@code puzzle.SearchTrace} enabled to also see the flight
+ * recorder events.
+ * <p>
+ * Before measuring, it checks the trace format on a tiny ring buffer: one thread records more events than the buffer
+ * holds and another fewer, and the dump must read back with the right event counts, the right number of dropped
+ * events and the surviving events oldest first. It then checks that a tracer never holds more buffers than its limit
+ * while short-lived threads keep recording, and that the events this costs are counted as dropped.
+ *
+ * @author ahmad
+ */
+public class SearchTracingBenchmark {
+
+    private interface Solve {
+        Deque<PuzzleMap> run(SolverOptions options) throws Exception;
+    }
+
+    private static final int WARMUPS = 3;
+    private static final int RUNS = 15;
+
+    public static void main(String[] args) throws Exception {
+
+        Path directory = Files.createTempDirectory("search-trace");
+        if (!checkFormat(directory.resolve("ring.bin"))) {
+            System.out.println("FAILED: the trace did not read back as it was recorded");
+            System.exit(1);
+        }
+        if (!checkBufferLimit(directory.resolve("limit.bin"))) {
+            System.out.println("FAILED: the tracer kept more buffers than its limit or lost count of the events");
+            System.exit(1);
+        }
+
+        PuzzleMap hard = PuzzleParser.parse(new char[][]{
+                {'X', 'X', 'X', 'X', 'X', 'X'},
+                {'X', 'A', 'D', 'D', 'H', 'X'},
+                {'X', 'A', 'D', 'D', 'H', 'X'},
+                {'X', 'B', 'E', 'E', 'I', 'X'},
+                {'X', 'B', 'F', 'G', 'I', 'X'},
+                {'X', 'C', ' ', ' ', ' ', 'X'},
+                {'X', 'X', 'Z', 'Z', 'X', 'X'}
+        });
+        PuzzleMap easy = PuzzleParser.parse(new char[][]{
+                {'X', 'X', 'X', 'X', 'X', 'X'},
+                {'X', 'A', 'E', 'E', 'H', 'X'},
+                {'X', 'A', 'D', 'D', 'H', 'X'},
+                {'X', 'B', 'D', 'D', 'I', 'X'},
+                {'X', 'B', 'F', 'G', 'I', 'X'},
+                {'X', 'C', ' ', ' ', ' ', 'X'},
+                {'X', 'X', 'Z', 'Z', 'X', 'X'}
+        });
+        Heuristic heuristic = HeuristicAlgorithm.MANHATTAN;
+
+        String[] names = {"A*", "parallel A* x4", "deterministic A* x4", "parallel BFS x4"};
+        Solve[] solves = {
+                options -> new AStarPuzzleSolver(options).solve(hard, heuristic),
+                options -> new AStarPuzzleSolver(options).solveParallel(hard, heuristic, 4),
+                options -> new AStarPuzzleSolver(options.withDeterminism(true)).solveParallel(hard, heuristic, 4),
+                options -> new BreadthFirstPuzzleSolver(options).solveParallel(easy, heuristic, 4)
+        };
+
+        System.out.println("solver                 off ms    on ms  overhead  moves");
+        for (int s = 0; s < solves.length; s++) {
+            SearchTracer tracer = new SearchTracer(1 << 16);
+            SolverOptions off = SolverOptions.defaults();
+            SolverOptions on = off.withTracer(tracer);
+            for (int i = 0; i < WARMUPS; i++) {
+                solves[s].run(off);
+                solves[s].run(on);
+            }
+            // alternate the two so that both see the same noise
+            long offNanos = Long.MAX_VALUE;
+            long onNanos = Long.MAX_VALUE;
+            for (int i = 0; i < RUNS; i++) {
+                tracer.clear();
+                offNanos = Math.min(offNanos, time(solves[s], off));
+                onNanos = Math.min(onNanos, time(solves[s], on));
+            }
+            tracer.clear();
+            Deque<PuzzleMap> solution = solves[s].run(on);
+            System.out.printf("%-20s %8d %8d %8.1f%% %6d%n", names[s], TimeUnit.NANOSECONDS.toMillis(offNanos),
+                    TimeUnit.NANOSECONDS.toMillis(onNanos), 100.0 * (onNanos - offNanos) / offNanos,
+                    solution.size() - 1);
+            Path file = directory.resolve("trace-" + s + ".bin");
+            tracer.dump(file);
+        }
+        for (int s = 0; s < solves.length; s++) {
+            System.out.println();
+            System.out.println("=== " + names[s]);
+            SearchTraceAnalyzer.analyze(directory.resolve("trace-" + s + ".bin"), 5, 6, System.out);
+        }
+    }
+
+    /**
+     * records 20 events on this thread and 3 on another into rings of 8, with keys counting up and the kinds taking
+     * turns, and checks what reads back from the dump.
+     */
+    private static boolean checkFormat(Path file) throws Exception {
+        int capacity = 8;
+        int many = 20;
+        int few = 3;
+        SearchTracer tracer = new SearchTracer(capacity);
+        for (int i = 0; i < many; i++) {
+            tracer.record((byte) (i % 3), i, i, 0.5, i + 0.5, 0);
+        }
+        Thread other = new Thread(() -> {
+            for (int i = 0; i < few; i++) {
+                tracer.record(SearchTracer.EXPAND, 100 + i, i, Double.NaN, Double.NaN, 0);
+            }
+        });
+        other.start();
+        other.join();
+        tracer.dump(file);
+
+        List<SearchTraceAnalyzer.ThreadTrace> threads = SearchTraceAnalyzer.read(file);
+        boolean ok = threads.size() == 2 && tracer.droppedEvents() == many - capacity;
+        for (SearchTraceAnalyzer.ThreadTrace thread : threads) {
+            boolean full = thread.written == many;
+            int count = full ? capacity : few;
+            long firstKey = full ? many - capacity : 100;
+            ok &= thread.written == (full ? many : few) && thread.kinds.length == count;
+            for (int i = 0; ok && i < count; i++) {
+                long key = firstKey + i;
+                ok = thread.keys[i] == key && thread.kinds[i] == (full ? key % 3 : SearchTracer.EXPAND)
+                        && (i == 0 || thread.starts[i] >= thread.starts[i - 1]);
+            }
+        }
+        System.out.println("trace format: " + (ok ? "OK" : "FAILED") + ", " + tracer.droppedEvents()
+                + " of " + (many + few) + " events dropped");
+        SearchTraceAnalyzer.analyze(file, 2, 2, System.out);
+        System.out.println();
+        return ok;
+    }
+
+    /**
+     * with room for 2 buffers, this thread records once and 5 short-lived threads twice each, one after the other,
+     * each taking over the buffer of the previous one; then a thread records while another one that holds the last
+     * buffer is still alive, and gets none.
+     */
+    private static boolean checkBufferLimit(Path file) throws Exception {
+        SearchTracer tracer = new SearchTracer(8, 2);
+        tracer.record(SearchTracer.EXPAND, 0, 0, Double.NaN, Double.NaN, 0);
+        for (int t = 0; t < 5; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 2; i++) {
+                    tracer.record(SearchTracer.EXPAND, i, i, Double.NaN, Double.NaN, 0);
+                }
+            });
+            thread.start();
+            thread.join();
+        }
+        long recycled = tracer.droppedEvents();
+
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            tracer.record(SearchTracer.EXPAND, 1, 1, Double.NaN, Double.NaN, 0);
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        holder.start();
+        while (tracer.droppedEvents() == recycled) {
+            Thread.sleep(1); // until the holder has taken over the buffer of the last thread
+        }
+        Thread starved = new Thread(() -> tracer.record(SearchTracer.EXPAND, 2, 2, Double.NaN, Double.NaN, 0));
+        starved.start();
+        starved.join();
+        tracer.dump(file);
+        release.countDown();
+        holder.join();
+
+        int threads = SearchTraceAnalyzer.read(file).size();
+        boolean ok = recycled == 4 * 2 && tracer.droppedEvents() == 5 * 2 + 1 && threads == 2;
+        System.out.println("buffer limit: " + (ok ? "OK" : "FAILED") + ", " + threads + " buffers dumped, "
+                + tracer.droppedEvents() + " of 13 events dropped");
+        System.out.println();
+        return ok;
+    }
+
+    private static long time(Solve solve, SolverOptions options) throws Exception {
+        long start = System.nanoTime();
+        solve.run(options);
+        return System.nanoTime() - start;
+    }
+}